@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.concurrent.TracedExecutor;
+import io.opentracing.contrib.grizzly.http.server.TracedRequestExecutor;
+import io.opentracing.contrib.grizzly.http.server.TracedRequests;
+import io.opentracing.contrib.grizzly.http.server.TracingRequestHttpServerFilter;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.http.HttpContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing a task to another executor on behalf of a traced request, with the request's span active
+ * while it runs: {@link TracedRequestExecutor} taking the span from the request, against
+ * opentracing-concurrent's {@link TracedExecutor}, which needs the span active on the submitting
+ * thread and takes it from there. The executor runs tasks on the calling thread, so only the cost
+ * of carrying the context over is measured.
+ *
+ * @author Jose Montoya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorContextBenchmark {
+	/**
+	 * The traced executor starts a span per task, drop them every so often so that memory stays flat.
+	 */
+	private static final int RESET_MASK = 4095;
+
+	private final FilterChainContext ctx = new FilterChainContext();
+	private MockTracer tracer;
+	private Executor direct;
+	private TracedExecutor tracedExecutor;
+	private TracedRequestExecutor requestExecutor;
+	private Runnable task;
+	private Span seen;
+	private int ops;
+
+	@Setup
+	public void setup() throws IOException {
+		tracer = new MockTracer(new ThreadLocalScopeManager());
+		direct = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		};
+		tracedExecutor = new TracedExecutor(direct, tracer);
+		requestExecutor = new TracedRequestExecutor(direct, tracer);
+		task = new Runnable() {
+			@Override
+			public void run() {
+				seen = tracer.activeSpan();
+			}
+		};
+
+		// a request that stays traced, its context is never completed
+		ctx.setMessage(HttpContent.builder(Requests.small()).last(true).build());
+		new TracingRequestHttpServerFilter(new BaseFilter() {
+			@Override
+			public NextAction handleRead(FilterChainContext ctx) {
+				return ctx.getStopAction();
+			}
+		}, tracer).handleRead(ctx);
+	}
+
+	@Benchmark
+	public Span baseline() {
+		direct.execute(task);
+		return seen;
+	}
+
+	@Benchmark
+	public Span tracedRequestExecutor() {
+		requestExecutor.execute(ctx, task);
+		return seen;
+	}
+
+	@Benchmark
+	public Span concurrentTracedExecutor() {
+		if ((++ops & RESET_MASK) == 0) {
+			tracer.reset();
+		}
+		io.opentracing.Scope scope = TracedRequests.activate(ctx, tracer);
+		try {
+			tracedExecutor.execute(task);
+		} finally {
+			scope.close();
+		}
+		return seen;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Tracer;
+import io.opentracing.contrib.grizzly.http.server.GrizzlyServerSpanDecorator;
+import io.opentracing.contrib.grizzly.http.server.TracingRequestHttpServerFilter;
+import io.opentracing.contrib.grizzly.http.server.TracingResponseHttpServerFilter;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.Filter;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One request through the read and write side of the chain: the wrapped handler filter alone as
+ * the baseline, then wrapped by {@link TracingRequestHttpServerFilter} and
+ * {@link TracingResponseHttpServerFilter} with a mock and a noop tracer.
+ *
+ * @author Jose Montoya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark {
+	/**
+	 * The mock tracer keeps every finished span, drop them every so often so that memory stays flat.
+	 */
+	private static final int RESET_MASK = 4095;
+
+	private final FilterChainContext ctx = new FilterChainContext();
+	private HttpContent requestContent;
+	private HttpContent responseContent;
+
+	private Filter handler;
+	private Filter responsePassThrough;
+
+	private MockTracer mockTracer;
+	private Filter mockTracedRequest;
+	private Filter mockTracedResponse;
+
+	private Filter noopTracedRequest;
+	private Filter noopTracedResponse;
+
+	private int ops;
+
+	@Setup
+	public void setup() {
+		final HttpRequestPacket request = Requests.small();
+		requestContent = HttpContent.builder(request).last(true).build();
+		responseContent = HttpContent.builder(HttpResponsePacket.builder(request).status(200).build()).last(true).build();
+
+		handler = new BaseFilter() {
+			@Override
+			public NextAction handleRead(FilterChainContext ctx) throws IOException {
+				return ctx.getStopAction();
+			}
+		};
+		responsePassThrough = new BaseFilter();
+
+		mockTracer = new MockTracer(new ThreadLocalScopeManager());
+		mockTracedRequest = new TracingRequestHttpServerFilter(handler, mockTracer);
+		mockTracedResponse = new TracingResponseHttpServerFilter(mockTracer);
+
+		final Tracer noopTracer = NoopTracerFactory.create();
+		noopTracedRequest = new TracingRequestHttpServerFilter(handler, noopTracer,
+				Collections.singletonList(GrizzlyServerSpanDecorator.STANDARD_TAGS));
+		noopTracedResponse = new TracingResponseHttpServerFilter(noopTracer);
+	}
+
+	@Benchmark
+	public NextAction baseline() throws IOException {
+		return exchange(handler, responsePassThrough);
+	}
+
+	@Benchmark
+	public NextAction tracedMockTracer() throws IOException {
+		if ((++ops & RESET_MASK) == 0) {
+			mockTracer.reset();
+		}
+		return exchange(mockTracedRequest, mockTracedResponse);
+	}
+
+	@Benchmark
+	public NextAction tracedNoopTracer() throws IOException {
+		return exchange(noopTracedRequest, noopTracedResponse);
+	}
+
+	private NextAction exchange(Filter requestSide, Filter responseSide) throws IOException {
+		ctx.setMessage(requestContent);
+		requestSide.handleRead(ctx);
+		ctx.setMessage(responseContent);
+		final NextAction next = responseSide.handleWrite(ctx);
+		ctx.completeAndRelease();
+		return next;
+	}
+}
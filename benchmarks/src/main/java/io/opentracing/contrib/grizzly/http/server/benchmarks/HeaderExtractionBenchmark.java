@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.SpanContext;
+import io.opentracing.contrib.grizzly.http.server.GizzlyHttpRequestPacketAdapter;
+import io.opentracing.contrib.grizzly.http.server.PropagationExtractor;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Span context extraction through {@link GizzlyHttpRequestPacketAdapter}, against the eager copy
+ * of every header into a {@code HashMap} it used to do, and through a {@link PropagationExtractor}
+ * that only hands the tracer the propagation headers present, if any.
+ *
+ * @author Jose Montoya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderExtractionBenchmark {
+	@Param({"small", "large", "none"})
+	public String headers;
+
+	private final MockTracer tracer = new MockTracer();
+	private final PropagationExtractor extractor = new PropagationExtractor()
+			.format(Format.Builtin.HTTP_HEADERS, "traceid", "spanid");
+	private HttpRequestPacket request;
+
+	@Setup
+	public void setup() {
+		if ("large".equals(headers)) {
+			request = Requests.large();
+		} else if ("none".equals(headers)) {
+			request = Requests.edge();
+		} else {
+			request = Requests.small();
+		}
+	}
+
+	@Benchmark
+	public SpanContext eagerCopy() {
+		return tracer.extract(Format.Builtin.HTTP_HEADERS, new EagerCopyAdapter(request));
+	}
+
+	@Benchmark
+	public SpanContext lazyCarrier() {
+		return tracer.extract(Format.Builtin.HTTP_HEADERS, new GizzlyHttpRequestPacketAdapter(request));
+	}
+
+	@Benchmark
+	public SpanContext formatDetection() {
+		return extractor.extract(tracer, request);
+	}
+
+	private static final class EagerCopyAdapter implements TextMap {
+		private final Map<String, String> headers;
+
+		EagerCopyAdapter(HttpRequestPacket requestPacket) {
+			this.headers = new HashMap<>(requestPacket.getHeaders().size());
+			for (String headerName : requestPacket.getHeaders().names()) {
+				headers.put(headerName, requestPacket.getHeaders().getHeader(headerName));
+			}
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+			return headers.entrySet().iterator();
+		}
+
+		@Override
+		public void put(String key, String value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import io.opentracing.contrib.grizzly.http.server.HttpUrlBuilder;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the {@code http.url} tag. {@code legacyUriParse} reproduces the string
+ * concatenation and {@link URI} round trip {@code STANDARD_TAGS} used to do, with the remote host
+ * already resolved, so it does not even account for the reverse lookup.
+ *
+ * @author Jose Montoya
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpUrlBenchmark {
+	private HttpRequestPacket request;
+
+	@Setup
+	public void setup() {
+		request = HttpRequestPacket.builder()
+				.method(Method.GET)
+				.protocol(Protocol.HTTP_1_1)
+				.uri("/api/v1/users/42/orders")
+				.query("page=3&size=50&sort=created")
+				.header("Host", "api.example.com:8080")
+				.build();
+	}
+
+	@Benchmark
+	public String legacyUriParse() throws URISyntaxException {
+		return new URI(
+				(request.isSecure() ? "https://" : "http://")
+						+ "api.example.com"
+						+ ":"
+						+ 8080
+						+ request.getRequestURI()
+						+ (request.getQueryString() != null ? "?" + request.getQueryString() : ""))
+				.toString();
+	}
+
+	@Benchmark
+	public String urlBuilder() {
+		return HttpUrlBuilder.build(request, true);
+	}
+
+	@Benchmark
+	public String urlBuilderWithoutQuery() {
+		return HttpUrlBuilder.build(request, false);
+	}
+}
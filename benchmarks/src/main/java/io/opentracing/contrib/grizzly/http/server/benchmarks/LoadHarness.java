@@ -0,0 +1,371 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.grizzly.http.server.TracedFilterChainBuilder;
+import io.opentracing.contrib.grizzly.http.server.TracingRequestHttpServerFilter;
+import io.opentracing.contrib.grizzly.http.server.TracingResponseHttpServerFilter;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.HdrHistogram.Histogram;
+import org.glassfish.grizzly.IOStrategy;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChain;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.filterchain.TransportFilter;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.glassfish.grizzly.http.HttpServerFilter;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.nio.transport.TCPNIOServerConnection;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
+import org.glassfish.grizzly.strategies.WorkerThreadIOStrategy;
+
+/**
+ * Loopback load test: a {@link TCPNIOTransport} serving a fixed response, driven by client threads
+ * that each hold one keep-alive connection and pipeline a batch of requests on it. Every mode runs
+ * under both the same-thread and the worker-thread IO strategy and reports throughput along with
+ * the p50, p99 and p99.9 latency of a request, measured from the batch write to its response.
+ * <p>
+ * Modes:
+ * <ul>
+ * <li>{@code off}: the plain chain, no tracing filters,</li>
+ * <li>{@code noop}: {@link TracedFilterChainBuilder} with a noop tracer, the cost of the
+ * instrumentation alone,</li>
+ * <li>{@code traced}: {@link TracedFilterChainBuilder} with a {@link MockTracer},</li>
+ * <li>{@code legacy-map}: the deprecated filter constructors sharing a synchronized span map, as
+ * chains were set up before spans moved onto the request packet.</li>
+ * </ul>
+ * The mock tracer keeps finished spans behind a lock of its own, so {@code traced} includes some
+ * contention that a production tracer would not have; compare {@code traced} with
+ * {@code legacy-map} to see what the shared map costs.
+ * <p>
+ * Options are given as {@code name=value}: {@code threads} (defaults to the number of cores),
+ * {@code pipeline} (requests per batch, 1 for plain keep-alive, defaults to 8), {@code warmup} and
+ * {@code duration} in seconds, and comma separated {@code modes} and {@code strategies}
+ * ({@code same-thread}, {@code worker-thread}).
+ *
+ * @author Jose Montoya
+ */
+public final class LoadHarness {
+	private static final String LOCALHOST = "localhost";
+	private static final byte[] BODY = "OK".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] REQUEST = ("GET /api/v1/users/42/orders?page=3&size=50 HTTP/1.1\r\n"
+			+ "Host: localhost\r\n"
+			+ "User-Agent: load-harness\r\n"
+			+ "Accept: application/json\r\n"
+			+ "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+	private LoadHarness() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int pipeline = 8;
+		int warmup = 5;
+		int duration = 10;
+		String[] modes = {"off", "noop", "traced", "legacy-map"};
+		String[] strategies = {"same-thread", "worker-thread"};
+		for (String arg : args) {
+			final int eq = arg.indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("expected name=value: " + arg);
+			}
+			final String value = arg.substring(eq + 1);
+			switch (arg.substring(0, eq)) {
+				case "threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "pipeline":
+					pipeline = Integer.parseInt(value);
+					break;
+				case "warmup":
+					warmup = Integer.parseInt(value);
+					break;
+				case "duration":
+					duration = Integer.parseInt(value);
+					break;
+				case "modes":
+					modes = value.split(",");
+					break;
+				case "strategies":
+					strategies = value.split(",");
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option: " + arg);
+			}
+		}
+
+		System.out.printf(Locale.ROOT, "%d client threads, %d requests per batch, %ds warmup, %ds measurement%n",
+				threads, pipeline, warmup, duration);
+		System.out.printf(Locale.ROOT, "%-14s %-11s %12s %10s %10s %10s%n",
+				"strategy", "mode", "req/s", "p50 us", "p99 us", "p99.9 us");
+		for (String strategy : strategies) {
+			for (String mode : modes) {
+				final Result result = run(ioStrategy(strategy), mode, threads, pipeline, warmup, duration);
+				System.out.printf(Locale.ROOT, "%-14s %-11s %12.0f %10.1f %10.1f %10.1f%n",
+						strategy, mode, result.throughput,
+						result.latency.getValueAtPercentile(50) / 1000.0,
+						result.latency.getValueAtPercentile(99) / 1000.0,
+						result.latency.getValueAtPercentile(99.9) / 1000.0);
+			}
+		}
+	}
+
+	private static IOStrategy ioStrategy(String name) {
+		switch (name) {
+			case "same-thread":
+				return SameThreadIOStrategy.getInstance();
+			case "worker-thread":
+				return WorkerThreadIOStrategy.getInstance();
+			default:
+				throw new IllegalArgumentException("unknown strategy: " + name);
+		}
+	}
+
+	private static Result run(IOStrategy strategy, String mode, int threads, int pipeline, int warmup, int duration)
+			throws Exception {
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		final TCPNIOTransport transport = TCPNIOTransportBuilder.newInstance()
+				.setIOStrategy(strategy)
+				.build();
+		try {
+			transport.setProcessor(filterChain(mode, scheduler));
+			final TCPNIOServerConnection server = transport.bind(LOCALHOST, 0);
+			transport.start();
+			final int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+			drive(port, threads, pipeline, TimeUnit.SECONDS.toNanos(warmup));
+			final long start = System.nanoTime();
+			final Histogram latency = drive(port, threads, pipeline, TimeUnit.SECONDS.toNanos(duration));
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			return new Result(latency.getTotalCount() / seconds, latency);
+		} finally {
+			transport.shutdownNow();
+			scheduler.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static FilterChain filterChain(String mode, ScheduledExecutorService scheduler) {
+		final FilterChainBuilder builder;
+		switch (mode) {
+			case "off":
+				builder = FilterChainBuilder.stateless();
+				break;
+			case "noop":
+				builder = new TracedFilterChainBuilder(NoopTracerFactory.create());
+				break;
+			case "traced":
+				builder = new TracedFilterChainBuilder(mockTracer(scheduler));
+				break;
+			case "legacy-map":
+				final Tracer tracer = mockTracer(scheduler);
+				final Map<HttpRequestPacket, Span> spans = Collections.synchronizedMap(new WeakHashMap<HttpRequestPacket, Span>());
+				return FilterChainBuilder.stateless()
+						.add(new TransportFilter())
+						.add(new HttpServerFilter())
+						.add(new TracingResponseHttpServerFilter(spans, tracer))
+						.add(new TracingRequestHttpServerFilter(new FixedResponseFilter(), spans, tracer))
+						.build();
+			default:
+				throw new IllegalArgumentException("unknown mode: " + mode);
+		}
+		return builder
+				.add(new TransportFilter())
+				.add(new HttpServerFilter())
+				.add(new FixedResponseFilter())
+				.build();
+	}
+
+	/**
+	 * The mock tracer keeps every finished span, drop them often enough that memory stays flat.
+	 */
+	private static MockTracer mockTracer(ScheduledExecutorService scheduler) {
+		final MockTracer tracer = new MockTracer(new ThreadLocalScopeManager());
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tracer.reset();
+			}
+		}, 100, 100, TimeUnit.MILLISECONDS);
+		return tracer;
+	}
+
+	private static Histogram drive(final int port, int threads, final int pipeline, long durationNanos)
+			throws Exception {
+		final long deadline = System.nanoTime() + durationNanos;
+		final List<Client> clients = new ArrayList<>(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final Client client = new Client(port, pipeline, deadline, done);
+			clients.add(client);
+			new Thread(client, "load-client-" + i).start();
+		}
+		done.await();
+
+		final Histogram latency = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+		for (Client client : clients) {
+			if (client.failure != null) {
+				throw new IllegalStateException("client failed", client.failure);
+			}
+			latency.add(client.latency);
+		}
+		return latency;
+	}
+
+	private static final class FixedResponseFilter extends BaseFilter {
+		@Override
+		public NextAction handleRead(FilterChainContext ctx) throws IOException {
+			if (ctx.getMessage() instanceof HttpContent) {
+				final HttpContent httpContent = ctx.getMessage();
+				final HttpResponsePacket response = HttpResponsePacket.builder((HttpRequestPacket) httpContent.getHttpHeader())
+						.status(200)
+						.reasonPhrase("OK")
+						.contentLength(BODY.length)
+						.build();
+				ctx.write(HttpContent.builder(response)
+						.content(Buffers.wrap(ctx.getMemoryManager(), BODY))
+						.last(true)
+						.build());
+			}
+			return ctx.getStopAction();
+		}
+	}
+
+	private static final class Client implements Runnable {
+		private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+		private final int port;
+		private final byte[] batch;
+		private final int pipeline;
+		private final long deadline;
+		private final CountDownLatch done;
+		final Histogram latency = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+		volatile Throwable failure;
+
+		Client(int port, int pipeline, long deadline, CountDownLatch done) {
+			this.port = port;
+			this.pipeline = pipeline;
+			this.deadline = deadline;
+			this.done = done;
+			this.batch = new byte[REQUEST.length * pipeline];
+			for (int i = 0; i < pipeline; i++) {
+				System.arraycopy(REQUEST, 0, batch, i * REQUEST.length, REQUEST.length);
+			}
+		}
+
+		@Override
+		public void run() {
+			try (Socket socket = new Socket(LOCALHOST, port)) {
+				socket.setTcpNoDelay(true);
+				final OutputStream out = socket.getOutputStream();
+				final InputStream in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+				while (System.nanoTime() < deadline) {
+					final long sent = System.nanoTime();
+					out.write(batch);
+					out.flush();
+					for (int i = 0; i < pipeline; i++) {
+						readResponse(in);
+						latency.recordValue(System.nanoTime() - sent);
+					}
+				}
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				done.countDown();
+			}
+		}
+
+		/**
+		 * Consumes one response, headers line by line, then as many body bytes as its
+		 * {@code Content-Length} announces.
+		 */
+		private void readResponse(InputStream in) throws IOException {
+			int contentLength = 0;
+			int lineLength = 0;
+			int matched = 0;
+			boolean inValue = false;
+			while (true) {
+				final int b = read(in);
+				if (b == '\n') {
+					if (lineLength == 0) {
+						break;
+					}
+					lineLength = 0;
+					matched = 0;
+					inValue = false;
+				} else if (b != '\r') {
+					if (inValue) {
+						if (b >= '0' && b <= '9') {
+							contentLength = contentLength * 10 + (b - '0');
+						}
+					} else if (matched == lineLength && matched < CONTENT_LENGTH.length
+							&& Character.toLowerCase(b) == CONTENT_LENGTH[matched]) {
+						inValue = ++matched == CONTENT_LENGTH.length;
+					}
+					lineLength++;
+				}
+			}
+			for (int i = 0; i < contentLength; i++) {
+				read(in);
+			}
+		}
+
+		private static int read(InputStream in) throws IOException {
+			final int b = in.read();
+			if (b < 0) {
+				throw new EOFException("connection closed by the server");
+			}
+			return b;
+		}
+	}
+
+	private static final class Result {
+		final double throughput;
+		final Histogram latency;
+
+		Result(double throughput, Histogram latency) {
+			this.throughput = throughput;
+			this.latency = latency;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+
+/**
+ * Request packets shaped like real traffic, built without a connection.
+ *
+ * @author Jose Montoya
+ */
+final class Requests {
+	private Requests() {
+	}
+
+	/**
+	 * A typical API call: a handful of headers, two of them propagation headers.
+	 */
+	static HttpRequestPacket small() {
+		return HttpRequestPacket.builder()
+				.method(Method.GET)
+				.protocol(Protocol.HTTP_1_1)
+				.uri("/api/v1/users/42/orders")
+				.query("page=3&size=50")
+				.header("Host", "api.example.com:8080")
+				.header("Accept", "application/json")
+				.header("User-Agent", "okhttp/3.14.2")
+				.header("traceid", "1234567890")
+				.header("spanid", "987654321")
+				.build();
+	}
+
+	/**
+	 * A request arriving at the edge: a handful of headers, none of them propagation headers.
+	 */
+	static HttpRequestPacket edge() {
+		return HttpRequestPacket.builder()
+				.method(Method.GET)
+				.protocol(Protocol.HTTP_1_1)
+				.uri("/api/v1/users/42/orders")
+				.query("page=3&size=50")
+				.header("Host", "api.example.com:8080")
+				.header("Accept", "application/json")
+				.header("User-Agent", "okhttp/3.14.2")
+				.header("Accept-Encoding", "gzip")
+				.build();
+	}
+
+	/**
+	 * A browser request: 30+ headers including large cookies, with the propagation headers last.
+	 */
+	static HttpRequestPacket large() {
+		final HttpRequestPacket.Builder builder = HttpRequestPacket.builder()
+				.method(Method.GET)
+				.protocol(Protocol.HTTP_1_1)
+				.uri("/app/dashboard")
+				.header("Host", "www.example.com")
+				.header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8")
+				.header("Accept-Encoding", "gzip, deflate, br")
+				.header("Accept-Language", "en-US,en;q=0.9,es;q=0.8")
+				.header("Cache-Control", "no-cache")
+				.header("Connection", "keep-alive")
+				.header("Pragma", "no-cache")
+				.header("Referer", "https://www.example.com/app/login?redirect=%2Fapp%2Fdashboard")
+				.header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/74.0.3729.169 Safari/537.36")
+				.header("Upgrade-Insecure-Requests", "1")
+				.header("DNT", "1");
+		for (int i = 0; i < 16; i++) {
+			builder.header("X-Custom-" + i, "value-" + i + "-0123456789abcdef");
+		}
+		final StringBuilder cookie = new StringBuilder();
+		for (int i = 0; i < 24; i++) {
+			cookie.append("cookie").append(i).append('=').append("0123456789abcdef0123456789abcdef0123456789abcdef; ");
+		}
+		builder.header("Cookie", cookie.toString());
+		builder.header("X-Session", cookie.substring(0, 512));
+		builder.header("traceid", "1234567890");
+		builder.header("spanid", "987654321");
+		return builder.build();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.contrib.grizzly.http.server.GrizzlyServerSpanDecorator;
+import io.opentracing.contrib.grizzly.http.server.StandardServerSpanDecorator;
+import io.opentracing.mock.MockTracer;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request tagging by {@code STANDARD_TAGS}, URL building included. The same span is tagged over
+ * and over so that only the decorator's own work is measured.
+ *
+ * @author Jose Montoya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanDecoratorBenchmark {
+	private final GrizzlyServerSpanDecorator withoutQuery = new StandardServerSpanDecorator(false);
+	private HttpRequestPacket request;
+	private Span span;
+
+	@Setup
+	public void setup() {
+		request = Requests.small();
+		span = new MockTracer().buildSpan("HTTP::GET").start();
+	}
+
+	@Benchmark
+	public Span standardTagsOnRequest() {
+		GrizzlyServerSpanDecorator.STANDARD_TAGS.onRequest(request, span);
+		return span;
+	}
+
+	@Benchmark
+	public Span standardTagsOnRequestWithoutQuery() {
+		withoutQuery.onRequest(request, span);
+		return span;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.opentracing.Span;
+import org.glassfish.grizzly.Grizzly;
+
+/**
+ * Finishes spans on a background thread instead of the Grizzly thread completing the request, so
+ * the work a tracer's reporter does at finish time does not delay the next request on the
+ * connection.
+ * <p>
+ * The finish timestamp is taken when the request completes and handed, along with the span, to a
+ * bounded lock-free queue with many producers and a single consumer. The background thread drains
+ * it in batches and finishes each span with its recorded timestamp. When the queue is full the
+ * {@link DropPolicy} decides what happens to the span.
+ *
+ * @author Jose Montoya
+ */
+public class AsyncSpanFinisher implements Closeable {
+	private static final Logger LOGGER = Grizzly.logger(AsyncSpanFinisher.class);
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * What to do with a span when the queue is full.
+	 */
+	public enum DropPolicy {
+		/**
+		 * Discard the span, it is never finished nor reported.
+		 */
+		DROP,
+		/**
+		 * Finish the span on the calling thread, as if there was no queue.
+		 */
+		FINISH_INLINE
+	}
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final Span[] spans;
+	private final long[] finishMicros;
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong head = new AtomicLong();
+	private final DropPolicy dropPolicy;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong finishedInline = new AtomicLong();
+	private final Thread drainer;
+	private volatile boolean closed;
+
+	/**
+	 * @param capacity the number of spans the queue holds, rounded up to a power of two no smaller than 2
+	 * @param dropPolicy what to do with a span when the queue is full
+	 */
+	public AsyncSpanFinisher(int capacity, DropPolicy dropPolicy) {
+		this(capacity, dropPolicy, true);
+	}
+
+	AsyncSpanFinisher(int capacity, DropPolicy dropPolicy, boolean startDrainer) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+		}
+		// a single slot could not tell a published span from a free slot apart
+		final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.spans = new Span[size];
+		this.finishMicros = new long[size];
+		this.dropPolicy = dropPolicy;
+
+		if (startDrainer) {
+			drainer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					drainUntilClosed();
+				}
+			}, "grizzly-span-finisher");
+			drainer.setDaemon(true);
+			drainer.start();
+		} else {
+			drainer = null;
+		}
+	}
+
+	/**
+	 * Stamps the finish time of the span and queues it to be finished on the background thread.
+	 */
+	public void finish(Span span) {
+		// the wall clock, which tracers stamp the start of spans with
+		final long micros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+		if (!closed) {
+			if (offer(span, micros)) {
+				if (closed) {
+					// close() may have drained for the last time before the span was published
+					drain();
+				}
+				return;
+			}
+			if (dropPolicy == DropPolicy.DROP) {
+				dropped.incrementAndGet();
+				return;
+			}
+		}
+		finishedInline.incrementAndGet();
+		span.finish(micros);
+	}
+
+	/**
+	 * @return the number of spans discarded because the queue was full
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of spans finished on the calling thread, because the queue was full or
+	 * the finisher closed
+	 */
+	public long getFinishedInlineCount() {
+		return finishedInline.get();
+	}
+
+	/**
+	 * @return the number of spans currently waiting to be finished
+	 */
+	public int getQueueDepth() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+
+	/**
+	 * Finishes the queued spans and stops the background thread, call it once the transport has
+	 * shut down. Spans handed over afterwards are finished on the calling thread.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (drainer != null) {
+			LockSupport.unpark(drainer);
+			try {
+				drainer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// offers published after this drain see closed and drain themselves
+		drain();
+	}
+
+	private boolean offer(Span span, long micros) {
+		long position = tail.get();
+		while (true) {
+			final int idx = (int) position & mask;
+			final long available = sequences.get(idx) - position;
+			if (available == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					spans[idx] = span;
+					finishMicros[idx] = micros;
+					// publishes the slot to the drainer, ordered before finish() reads closed again
+					sequences.set(idx, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (available < 0) {
+				// the drainer has not released this slot yet, the queue is full
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Finishes every span published so far. Besides the background thread, only close() and the
+	 * offers racing with it drain, so the lock is uncontended until the finisher closes.
+	 *
+	 * @return the number of spans finished
+	 */
+	synchronized int drain() {
+		long position = head.get();
+		int drained = 0;
+		while (true) {
+			final int idx = (int) position & mask;
+			if (sequences.get(idx) != position + 1) {
+				break;
+			}
+			final Span span = spans[idx];
+			final long micros = finishMicros[idx];
+			spans[idx] = null;
+			sequences.lazySet(idx, position + mask + 1);
+			head.lazySet(++position);
+			drained++;
+			try {
+				span.finish(micros);
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Failed to finish span", e);
+			}
+		}
+		return drained;
+	}
+
+	private void drainUntilClosed() {
+		while (!closed) {
+			if (drain() == 0) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.glassfish.grizzly.http.Method;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+
+/**
+ * The request tags of {@link StandardServerSpanDecorator} that don't depend on anything but the
+ * method, precomputed once per chain and handed to the span builder before the span starts, where
+ * samplers can see them too. The standard decorators are swapped for ones that only add what is
+ * left, the URL.
+ *
+ * @author Jose Montoya
+ */
+final class BaseTags {
+	/**
+	 * The configured decorators, the standard ones without the tags applied here.
+	 */
+	final GrizzlyServerSpanDecorator[] decorators;
+
+	private BaseTags(GrizzlyServerSpanDecorator[] decorators) {
+		this.decorators = decorators;
+	}
+
+	/**
+	 * @return the base tags of the given decorators, {@code null} when none of them is a standard
+	 * decorator tagging requests the standard way
+	 */
+	static BaseTags of(GrizzlyServerSpanDecorator[] decorators) {
+		final GrizzlyServerSpanDecorator[] remaining = decorators.clone();
+		boolean standard = false;
+		for (int i = 0; i < remaining.length; i++) {
+			if (remaining[i] instanceof StandardServerSpanDecorator && tagsRequestsAsStandard(remaining[i])) {
+				remaining[i] = new UrlOnly((StandardServerSpanDecorator) remaining[i]);
+				standard = true;
+			}
+		}
+		return standard ? new BaseTags(remaining) : null;
+	}
+
+	Tracer.SpanBuilder applyTo(Tracer.SpanBuilder spanBuilder, Method method) {
+		return spanBuilder
+				.withTag(Tags.COMPONENT.getKey(), StandardServerSpanDecorator.COMPONENT_NAME)
+				.withTag(Tags.HTTP_METHOD.getKey(), method.getMethodString())
+				.withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_SERVER);
+	}
+
+	private static boolean tagsRequestsAsStandard(GrizzlyServerSpanDecorator decorator) {
+		try {
+			return decorator.getClass().getMethod("onRequest", HttpRequestPacket.class, Span.class)
+					.getDeclaringClass() == StandardServerSpanDecorator.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static final class UrlOnly implements GrizzlyServerSpanDecorator {
+		private final StandardServerSpanDecorator standard;
+
+		UrlOnly(StandardServerSpanDecorator standard) {
+			this.standard = standard;
+		}
+
+		@Override
+		public void onRequest(HttpRequestPacket request, Span span) {
+			standard.onRequestUrl(request, span);
+		}
+
+		@Override
+		public void onResponse(HttpResponsePacket response, Span span) {
+			standard.onResponse(response, span);
+		}
+
+		@Override
+		public void onError(Throwable thrown, Span span) {
+			standard.onError(thrown, span);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.CloseReason;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+
+/**
+ * Spans for the lifetime of sampled connections, from their accept to their close.
+ * <p>
+ * A connection span is tagged with how long the connection waited for its first request, which
+ * includes any TLS handshake, how many requests it carried and how long it lived. The spans of the
+ * requests of a sampled connection are tagged with their position on it, so keep-alive reuse can
+ * be told apart from fresh connections. The state of a connection lives in one of its attributes,
+ * connections left unsampled cost nothing beyond the sampling decision.
+ *
+ * @author Jose Montoya
+ */
+final class ConnectionTracing {
+	static final String OPERATION_NAME = "connection";
+	static final String FIRST_REQUEST_LATENCY = "connection.first_request_latency_ns";
+	static final String REQUESTS = "connection.requests";
+	static final String LIFETIME = "connection.lifetime_ns";
+	static final String CLOSE_TYPE = "connection.close";
+	static final String REQUEST_INDEX = "connection.request_index";
+
+	private static final Attribute<State> STATE =
+			Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(ConnectionTracing.class.getName() + ".state");
+
+	private final Tracer tracer;
+	private final double rate;
+
+	/**
+	 * @param tracer the tracer to create connection spans with
+	 * @param rate the fraction of connections to trace, between 0 and 1
+	 */
+	ConnectionTracing(Tracer tracer, double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("rate must be between 0 and 1: " + rate);
+		}
+		this.tracer = tracer;
+		this.rate = rate;
+	}
+
+	void onAccept(Connection<?> connection) {
+		if (connection == null || !(rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate))) {
+			return;
+		}
+		final long acceptMicros = MonotonicClock.nowMicros();
+		final long acceptNanos = System.nanoTime();
+		final Span span = tracer.buildSpan(OPERATION_NAME)
+				.ignoreActiveSpan()
+				.withStartTimestamp(acceptMicros)
+				.withTag(Tags.COMPONENT.getKey(), StandardServerSpanDecorator.COMPONENT_NAME)
+				.withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_SERVER)
+				.start();
+		if (connection.getPeerAddress() instanceof InetSocketAddress) {
+			final InetSocketAddress peer = (InetSocketAddress) connection.getPeerAddress();
+			// the literal address, never a reverse lookup
+			Tags.PEER_HOSTNAME.set(span, peer.getHostString());
+			Tags.PEER_PORT.set(span, peer.getPort());
+		}
+		STATE.set(connection, new State(span, acceptMicros, acceptNanos));
+	}
+
+	/**
+	 * Counts a request of the connection, called once per request.
+	 *
+	 * @return the position of the request on its connection starting at 1, 0 if the connection is
+	 * not sampled
+	 */
+	int onRequest(Connection<?> connection) {
+		final State state = connection == null ? null : STATE.get(connection);
+		if (state == null) {
+			return 0;
+		}
+		final int index = state.requests.incrementAndGet();
+		if (index == 1) {
+			final long now = System.nanoTime();
+			state.span.setTag(FIRST_REQUEST_LATENCY, now - state.acceptNanos);
+			state.span.log(state.toEpochMicros(now), "first_request");
+		}
+		return index;
+	}
+
+	void onClose(Connection<?> connection) {
+		// removed, so that a connection is only finished once
+		final State state = connection == null ? null : STATE.remove(connection);
+		if (state == null) {
+			return;
+		}
+		final long now = System.nanoTime();
+		state.span.setTag(REQUESTS, state.requests.get());
+		state.span.setTag(LIFETIME, now - state.acceptNanos);
+		final CloseReason reason = connection.getCloseReason();
+		if (reason != null) {
+			state.span.setTag(CLOSE_TYPE, reason.getType() == CloseType.LOCALLY ? "local" : "remote");
+		}
+		state.span.finish(state.toEpochMicros(now));
+	}
+
+	private static final class State {
+		final Span span;
+		final long acceptMicros;
+		final long acceptNanos;
+		final AtomicInteger requests = new AtomicInteger();
+
+		State(Span span, long acceptMicros, long acceptNanos) {
+			this.span = span;
+			this.acceptMicros = acceptMicros;
+			this.acceptNanos = acceptNanos;
+		}
+
+		/**
+		 * Relative to the start of the span, which a connection living for days would otherwise
+		 * drift away from.
+		 */
+		long toEpochMicros(long nanoTime) {
+			return MonotonicClock.toEpochMicros(acceptMicros, acceptNanos, nanoTime);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.nio.charset.StandardCharsets;
+
+import org.glassfish.grizzly.http.util.DataChunk;
+
+/**
+ * Helpers for reading a {@link DataChunk} in place, whatever its backing storage, without
+ * materializing it as a {@code String}. HTTP request lines and headers are ISO-8859-1 on the wire,
+ * so a byte maps directly to a char.
+ *
+ * @author Jose Montoya
+ */
+final class DataChunks {
+	private DataChunks() {
+	}
+
+	static char charAt(DataChunk chunk, int idx) {
+		switch (chunk.getType()) {
+			case Buffer:
+				return (char) (chunk.getBufferChunk().getBuffer().get(chunk.getBufferChunk().getStart() + idx) & 0xFF);
+			case Bytes:
+				return (char) (chunk.getByteChunk().getBuffer()[chunk.getByteChunk().getStart() + idx] & 0xFF);
+			case Chars:
+				return chunk.getCharChunk().getBuffer()[chunk.getCharChunk().getStart() + idx];
+			case String:
+				return chunk.toString().charAt(idx);
+			default:
+				throw new IndexOutOfBoundsException(String.valueOf(idx));
+		}
+	}
+
+	/**
+	 * @return at most the given number of characters from the start of the chunk
+	 */
+	static String toString(DataChunk chunk, int maxLength) {
+		final int length = Math.min(chunk.getLength(), maxLength);
+		switch (chunk.getType()) {
+			case Bytes:
+				return new String(chunk.getByteChunk().getBuffer(), chunk.getByteChunk().getStart(), length,
+						StandardCharsets.ISO_8859_1);
+			case String:
+				return chunk.toString().substring(0, length);
+			default:
+				final char[] chars = new char[length];
+				for (int i = 0; i < length; i++) {
+					chars[i] = charAt(chunk, i);
+				}
+				return new String(chars);
+		}
+	}
+
+	/**
+	 * Copies the first bytes of the chunk into the given array.
+	 *
+	 * @return the index in the array after the last byte copied
+	 */
+	static int copy(DataChunk chunk, int length, byte[] dst, int idx) {
+		if (chunk.getType() == DataChunk.Type.Bytes) {
+			System.arraycopy(chunk.getByteChunk().getBuffer(), chunk.getByteChunk().getStart(), dst, idx, length);
+			return idx + length;
+		}
+		for (int i = 0; i < length; i++) {
+			dst[idx++] = (byte) charAt(chunk, i);
+		}
+		return idx;
+	}
+
+	/**
+	 * Copies the chunk, a header name or other ASCII token, into the given array in lowercase.
+	 *
+	 * @return the index in the array after the last byte copied
+	 */
+	static int copyLowerCase(DataChunk chunk, byte[] dst, int idx) {
+		final int length = chunk.getLength();
+		for (int i = 0; i < length; i++) {
+			final char c = charAt(chunk, i);
+			dst[idx++] = (byte) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+		}
+		return idx;
+	}
+
+	static void appendTo(StringBuilder sb, DataChunk chunk) {
+		if (chunk.getType() == DataChunk.Type.String) {
+			sb.append(chunk.toString());
+			return;
+		}
+		final int length = chunk.getLength();
+		for (int i = 0; i < length; i++) {
+			sb.append(charAt(chunk, i));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import io.opentracing.tag.Tags;
+
+/**
+ * The fields of an error log event: {@code event=error} and {@code error.object=<thrown>}.
+ * <p>
+ * Keys and the event value are constants and the {@code event} entry is shared, so logging an error
+ * costs this map and its {@code error.object} entry instead of a {@code HashMap} with its table and
+ * nodes. A tracer iterating the fields still gets a fresh entry set view and iterator.
+ *
+ * @author Jose Montoya
+ */
+final class ErrorLogFields extends AbstractMap<String, Object> {
+	static final String EVENT = "event";
+	static final String ERROR_OBJECT = "error.object";
+	private static final String ERROR_EVENT = Tags.ERROR.getKey();
+	private static final Entry<String, Object> EVENT_ENTRY = new SimpleImmutableEntry<String, Object>(EVENT, ERROR_EVENT);
+
+	private final Throwable thrown;
+	private final Entry<String, Object> errorObject;
+
+	ErrorLogFields(Throwable thrown) {
+		this.thrown = thrown;
+		this.errorObject = new SimpleImmutableEntry<String, Object>(ERROR_OBJECT, thrown);
+	}
+
+	@Override
+	public int size() {
+		return 2;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return EVENT.equals(key) || ERROR_OBJECT.equals(key);
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (EVENT.equals(key)) {
+			return ERROR_EVENT;
+		}
+		if (ERROR_OBJECT.equals(key)) {
+			return thrown;
+		}
+		return null;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+			@Override
+			public int size() {
+				return 2;
+			}
+
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				return new Iterator<Entry<String, Object>>() {
+					private int idx;
+
+					@Override
+					public boolean hasNext() {
+						return idx < 2;
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						switch (idx++) {
+							case 0:
+								return EVENT_ENTRY;
+							case 1:
+								return errorObject;
+							default:
+								throw new NoSuchElementException();
+						}
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import io.opentracing.propagation.TextMap;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Carrier over the headers of a request. Nothing is copied up front: the iterator walks the
+ * request's {@link MimeHeaders} in place and only turns a name or value into a {@code String}
+ * when the tracer asks for it, and {@link #get(String)} looks up a single header by name.
+ *
+ * @author Jose Montoya
+ */
+public class GizzlyHttpRequestPacketAdapter implements TextMap {
+	private final HttpRequestPacket requestPacket;
+	private final MimeHeaders headers;
+
+	public GizzlyHttpRequestPacketAdapter(HttpRequestPacket requestPacket) {
+		this.requestPacket = requestPacket;
+		this.headers = requestPacket.getHeaders();
+	}
+
+	/**
+	 * Looks up the first value of the given header, matching its name case-insensitively.
+	 *
+	 * @param key the header name
+	 * @return the header value, or null if the request does not carry it
+	 */
+	public String get(String key) {
+		return headers.getHeader(key);
+	}
+
+	@Override
+	public Iterator<Map.Entry<String, String>> iterator() {
+		return new HeaderIterator(headers);
+	}
+
+	@Override
+	public void put(String key, String value) {
+		requestPacket.addHeader(key, value);
+	}
+
+	private static final class HeaderIterator implements Iterator<Map.Entry<String, String>> {
+		private final MimeHeaders headers;
+		private int idx;
+
+		HeaderIterator(MimeHeaders headers) {
+			this.headers = headers;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return idx < headers.size();
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return new HeaderEntry(headers, idx++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static final class HeaderEntry implements Map.Entry<String, String> {
+		private final MimeHeaders headers;
+		private final int idx;
+
+		HeaderEntry(MimeHeaders headers, int idx) {
+			this.headers = headers;
+			this.idx = idx;
+		}
+
+		@Override
+		public String getKey() {
+			// Grizzly caches the decoded string on the underlying chunk
+			return headers.getName(idx).toString();
+		}
+
+		@Override
+		public String getValue() {
+			return headers.getValue(idx).toString();
+		}
+
+		@Override
+		public String setValue(String value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+}
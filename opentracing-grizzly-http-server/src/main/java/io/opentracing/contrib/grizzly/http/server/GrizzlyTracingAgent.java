@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
+
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.grizzly.filterchain.FilterChain;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.http.HttpServerFilter;
+
+import io.opentracing.util.GlobalTracer;
+import net.bytebuddy.ClassFileVersion;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * Java agent tracing every Grizzly server without code changes, by having
+ * {@link FilterChainBuilder.StatelessFilterChainBuilder#build()} build chains that contain an
+ * {@link HttpServerFilter} the way a {@link TracedFilterChainBuilder} does. This covers the plain
+ * {@code HttpServer} as well as chains built directly.
+ * <p>
+ * Spans are reported to the {@link GlobalTracer}. The resulting chain is the one the manual builder
+ * produces, so the agent costs nothing per request, its only work happens once per chain built.
+ * Load it with {@code -javaagent:opentracing-grizzly-http-server-agent.jar}, from the same class
+ * loader as Grizzly. On a JVM newer than the class files the bundled Byte Buddy reads, the agent
+ * reports an error and installs nothing unless {@code -Dnet.bytebuddy.experimental=true} is set.
+ *
+ * @author Jose Montoya
+ */
+public final class GrizzlyTracingAgent {
+	// not Grizzly's logger, nothing from the application is loaded before the agent is installed
+	private static final Logger LOGGER = Logger.getLogger(GrizzlyTracingAgent.class.getName());
+
+	private GrizzlyTracingAgent() {
+	}
+
+	public static void premain(String arguments, Instrumentation instrumentation) {
+		install(instrumentation);
+	}
+
+	public static void agentmain(String arguments, Instrumentation instrumentation) {
+		install(instrumentation);
+	}
+
+	static void install(Instrumentation instrumentation) {
+		final ClassFileVersion vm = ClassFileVersion.ofThisVm(ClassFileVersion.JAVA_V8);
+		if (vm.isGreaterThan(ClassFileVersion.latest()) && !Boolean.getBoolean("net.bytebuddy.experimental")) {
+			LOGGER.log(Level.SEVERE, "Grizzly tracing agent not installed, Java {0} is not supported yet,"
+					+ " set -Dnet.bytebuddy.experimental=true to try anyway", vm.getJavaVersion());
+			return;
+		}
+
+		final long start = System.nanoTime();
+		new AgentBuilder.Default()
+				// loaded chains builders are retransformed when attached late
+				.disableClassFormatChanges()
+				.with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
+				// matched by name first, the type itself is only described once it matches
+				.with(AgentBuilder.DescriptionStrategy.Default.POOL_ONLY)
+				.with(AgentBuilder.PoolStrategy.Default.FAST)
+				.with(new AgentBuilder.Listener.Adapter() {
+					@Override
+					public void onError(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded,
+							Throwable throwable) {
+						LOGGER.log(Level.SEVERE, "Could not instrument " + typeName + ", Grizzly servers will not be traced",
+								throwable);
+					}
+				})
+				.ignore(not(nameStartsWith("org.glassfish.grizzly.")))
+				.type(named("org.glassfish.grizzly.filterchain.FilterChainBuilder$StatelessFilterChainBuilder"))
+				.transform(new AgentBuilder.Transformer() {
+					@Override
+					public DynamicType.Builder<?> transform(DynamicType.Builder<?> builder, TypeDescription typeDescription,
+							ClassLoader classLoader, JavaModule module, ProtectionDomain protectionDomain) {
+						return builder.visit(Advice.to(BuildAdvice.class).on(named("build").and(takesArguments(0))));
+					}
+				})
+				.installOn(instrumentation);
+
+		LOGGER.log(Level.INFO, "Grizzly tracing agent installed in {0} ms",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Builds the traced version of the given chain, or returns {@code null} when the chain is not an
+	 * HTTP server chain or already traced.
+	 *
+	 * @param builder the builder whose chain is being built
+	 * @return the traced chain or {@code null} to build the chain as is
+	 */
+	public static FilterChain build(FilterChainBuilder builder) {
+		if (builder instanceof TracedFilterChainBuilder || builder.indexOfType(HttpServerFilter.class) == -1) {
+			return null;
+		}
+		return new TracedFilterChainBuilder(builder, GlobalTracer.get()).build();
+	}
+
+	/**
+	 * Inlined into {@code StatelessFilterChainBuilder#build()}, skipping the original body whenever
+	 * a traced chain was built instead.
+	 */
+	static final class BuildAdvice {
+		private BuildAdvice() {
+		}
+
+		@Advice.OnMethodEnter(skipOn = Advice.OnNonDefaultValue.class)
+		static FilterChain enter(@Advice.This FilterChainBuilder builder) {
+			return GrizzlyTracingAgent.build(builder);
+		}
+
+		@Advice.OnMethodExit
+		static void exit(@Advice.Enter FilterChain traced,
+				@Advice.Return(readOnly = false) FilterChain chain) {
+			if (traced != null) {
+				chain = traced;
+			}
+		}
+	}
+}
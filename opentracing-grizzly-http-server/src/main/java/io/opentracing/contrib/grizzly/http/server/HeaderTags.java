@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+import io.opentracing.Span;
+
+/**
+ * An allowlist of request headers tagged onto spans, compiled once into lowercase byte keys and
+ * the tag key of each header.
+ * <p>
+ * Header names are matched in place against the keys, and only the values of allowlisted headers
+ * present on a sampled span's request are decoded, at most the configured number of characters of
+ * each, so large or hostile values cannot inflate the spans.
+ *
+ * @author Jose Montoya
+ */
+final class HeaderTags {
+	static final String TAG_PREFIX = "http.request.header.";
+	static final int DEFAULT_MAX_VALUE_LENGTH = 256;
+
+	private final byte[][] names;
+	private final String[] tagKeys;
+	private final int maxValueLength;
+
+	HeaderTags(String[] headerNames, int maxValueLength) {
+		if (maxValueLength <= 0) {
+			throw new IllegalArgumentException("max value length must be positive: " + maxValueLength);
+		}
+		this.names = new byte[headerNames.length][];
+		this.tagKeys = new String[headerNames.length];
+		for (int i = 0; i < headerNames.length; i++) {
+			if (headerNames[i].isEmpty()) {
+				throw new IllegalArgumentException("header name must not be empty");
+			}
+			final String name = headerNames[i].toLowerCase(Locale.ROOT);
+			names[i] = name.getBytes(StandardCharsets.ISO_8859_1);
+			tagKeys[i] = TAG_PREFIX + name;
+		}
+		this.maxValueLength = maxValueLength;
+	}
+
+	void onRequest(HttpRequestPacket request, Span span) {
+		final MimeHeaders headers = request.getHeaders();
+		final int size = headers.size();
+		for (int i = 0; i < names.length; i++) {
+			for (int j = 0; j < size; j++) {
+				// the first of repeated headers
+				if (headers.getName(j).equalsIgnoreCaseLowerCase(names[i])) {
+					span.setTag(tagKeys[i], DataChunks.toString(headers.getValue(j), maxValueLength));
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.Method;
+
+/**
+ * The standard request methods by index, so that per method values can live in plain arrays.
+ * Grizzly hands out the same {@link Method} instance for every request of a standard method, an
+ * identity comparison finds it.
+ *
+ * @author Jose Montoya
+ */
+final class HttpMethods {
+	private static final Method[] STANDARD = {
+			Method.GET, Method.POST, Method.PUT, Method.DELETE, Method.PATCH,
+			Method.HEAD, Method.OPTIONS, Method.TRACE, Method.CONNECT};
+
+	/**
+	 * The index shared by all non standard methods.
+	 */
+	static final int OTHER = STANDARD.length;
+	static final int COUNT = STANDARD.length + 1;
+
+	private HttpMethods() {
+	}
+
+	static int index(Method method) {
+		for (int i = 0; i < STANDARD.length; i++) {
+			if (STANDARD[i] == method) {
+				return i;
+			}
+		}
+		return OTHER;
+	}
+
+	/**
+	 * @return the name of the standard method at the index, {@code OTHER} for {@link #OTHER}
+	 */
+	static String name(int index) {
+		return index < STANDARD.length ? STANDARD[index].getMethodString() : "OTHER";
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.http.util.Header;
+
+/**
+ * Builds the {@code http.url} of a request straight from the request's buffers.
+ * <p>
+ * The authority is taken from the {@code Host} header, falling back to the local address of the
+ * connection, so no name resolution happens on the request path. The characters are appended to a
+ * per-thread {@link StringBuilder}, the only allocation being the resulting {@code String}.
+ *
+ * @author Jose Montoya
+ */
+public final class HttpUrlBuilder {
+	private static final int MAX_RETAINED_CAPACITY = 4096;
+
+	private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private HttpUrlBuilder() {
+	}
+
+	/**
+	 * @param request the request to describe
+	 * @param includeQueryString whether the query string, if any, should be part of the URL
+	 * @return the URL the request was addressed to
+	 */
+	public static String build(HttpRequestPacket request, boolean includeQueryString) {
+		StringBuilder sb = BUILDER.get();
+		if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+			// don't let a single huge URL pin memory on this thread
+			sb = new StringBuilder(256);
+			BUILDER.set(sb);
+		}
+		sb.setLength(0);
+
+		sb.append(request.isSecure() ? "https://" : "http://");
+
+		final DataChunk host = request.getHeaders().getValue(Header.Host);
+		if (host != null && !host.isNull() && host.getLength() > 0) {
+			DataChunks.appendTo(sb, host);
+		} else if (request.getConnection() != null) {
+			// the local address is an IP literal, getting it never resolves a name
+			sb.append(request.getLocalAddress()).append(':').append(request.getLocalPort());
+		}
+
+		DataChunks.appendTo(sb, request.getRequestURIRef().getRequestURIBC());
+
+		if (includeQueryString) {
+			final DataChunk query = request.getQueryStringDC();
+			if (!query.isNull() && query.getLength() > 0) {
+				sb.append('?');
+				DataChunks.appendTo(sb, query);
+			}
+		}
+
+		return sb.toString();
+	}
+}
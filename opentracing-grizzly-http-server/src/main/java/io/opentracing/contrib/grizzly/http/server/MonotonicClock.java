@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps for span events measured with {@link System#nanoTime()}. Spans start on the wall
+ * clock, so events are placed relative to a wall clock reading anchored to each span at its start:
+ * the offset from the anchor keeps the monotonic clock's precision and ordering, while a long lived
+ * process drifting away from the wall clock never skews the events of a span against its start.
+ *
+ * @author Jose Montoya
+ */
+final class MonotonicClock {
+	private MonotonicClock() {
+	}
+
+	/**
+	 * @return the wall clock in epoch microseconds, the anchor of a starting span
+	 */
+	static long nowMicros() {
+		return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param anchorMicros the wall clock read at the start of the span
+	 * @param anchorNanos the nano time read along with it
+	 * @param nanoTime the nano time of the event
+	 * @return the epoch microseconds of the event
+	 */
+	static long toEpochMicros(long anchorMicros, long anchorNanos, long nanoTime) {
+		return anchorMicros + (nanoTime - anchorNanos) / 1000;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+/**
+ * Follows the sampling decision of the caller when the request carries one, so that a trace
+ * sampled upstream is never broken here and one dropped upstream costs nothing. Requests without a
+ * decision are left to the given sampler.
+ * <p>
+ * The decision is read in place from the W3C {@code traceparent}, B3 single and multi header and
+ * Jaeger {@code uber-trace-id} formats.
+ *
+ * @author Jose Montoya
+ */
+public class ParentSampledRequestSampler implements RequestSampler {
+	static final int UNKNOWN = 0;
+	static final int SAMPLED = 1;
+	static final int NOT_SAMPLED = 2;
+
+	private final RequestSampler fallback;
+
+	/**
+	 * @param fallback the sampler for requests that carry no sampling decision
+	 */
+	public ParentSampledRequestSampler(RequestSampler fallback) {
+		this.fallback = fallback;
+	}
+
+	@Override
+	public boolean isSampled(HttpRequestPacket request) {
+		switch (parentDecision(request.getHeaders())) {
+			case SAMPLED:
+				return true;
+			case NOT_SAMPLED:
+				return false;
+			default:
+				return fallback.isSampled(request);
+		}
+	}
+
+	static int parentDecision(MimeHeaders headers) {
+		DataChunk value = headers.getValue("traceparent");
+		if (value != null) {
+			// version-traceid-parentid-flags, the sampled bit is the lowest bit of the flags
+			return value.getLength() >= 55 ? fromHexFlag(DataChunks.charAt(value, 54)) : UNKNOWN;
+		}
+
+		value = headers.getValue("b3");
+		if (value != null) {
+			return fromB3Single(value);
+		}
+
+		value = headers.getValue("X-B3-Flags");
+		if (value != null && value.getLength() == 1 && DataChunks.charAt(value, 0) == '1') {
+			return SAMPLED;
+		}
+
+		value = headers.getValue("X-B3-Sampled");
+		if (value != null) {
+			if (value.equals("1") || value.equalsIgnoreCase("true")) {
+				return SAMPLED;
+			}
+			if (value.equals("0") || value.equalsIgnoreCase("false")) {
+				return NOT_SAMPLED;
+			}
+			return UNKNOWN;
+		}
+
+		value = headers.getValue("uber-trace-id");
+		if (value != null) {
+			return fromUberTraceId(value);
+		}
+
+		return UNKNOWN;
+	}
+
+	private static int fromB3Single(DataChunk value) {
+		// either just the decision, or traceid-spanid[-decision[-parentspanid]]
+		int decisionIdx = -1;
+		if (value.getLength() == 1) {
+			decisionIdx = 0;
+		} else {
+			int dashes = 0;
+			for (int i = 0; i < value.getLength(); i++) {
+				if (DataChunks.charAt(value, i) == '-' && ++dashes == 2) {
+					decisionIdx = i + 1;
+					break;
+				}
+			}
+		}
+		if (decisionIdx < 0 || decisionIdx >= value.getLength()) {
+			return UNKNOWN;
+		}
+		switch (DataChunks.charAt(value, decisionIdx)) {
+			case '1':
+			case 'd':
+				return SAMPLED;
+			case '0':
+				return NOT_SAMPLED;
+			default:
+				return UNKNOWN;
+		}
+	}
+
+	private static int fromUberTraceId(DataChunk value) {
+		// traceid:spanid:parentspanid:flags, with the colons possibly url encoded
+		for (int i = value.getLength() - 1; i > 0; i--) {
+			final char c = DataChunks.charAt(value, i);
+			if (c == ':' || ((c == 'A' || c == 'a') && i > 1 && DataChunks.charAt(value, i - 1) == '3'
+					&& DataChunks.charAt(value, i - 2) == '%')) {
+				return i + 1 < value.getLength() ? fromHexFlag(DataChunks.charAt(value, value.getLength() - 1)) : UNKNOWN;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	private static int fromHexFlag(char lowestDigit) {
+		final int digit = Character.digit(lowestDigit, 16);
+		if (digit < 0) {
+			return UNKNOWN;
+		}
+		return (digit & 1) == 1 ? SAMPLED : NOT_SAMPLED;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.glassfish.grizzly.http.util.DataChunk;
+
+/**
+ * A set of path patterns compiled into a character trie, matched against a request path chunk in
+ * place, without building a {@code String}.
+ * <p>
+ * Patterns start with {@code /} and are either
+ * <ul>
+ * <li>exact paths, such as {@code /health},</li>
+ * <li>prefixes ending in {@code /**}, such as {@code /static/**}, which match the prefix itself and
+ * everything below it,</li>
+ * <li>simple globs, where {@code *} matches within a path segment and {@code **} across segments,
+ * such as {@code /assets/*.css}.</li>
+ * </ul>
+ * The literal part of every pattern lives in the trie, so a path that matches none of them costs
+ * at most one character comparison per trie level it walks down.
+ *
+ * @author Jose Montoya
+ */
+final class PathMatcher {
+	private final Node root;
+
+	private PathMatcher(Node root) {
+		this.root = root;
+	}
+
+	static PathMatcher compile(Collection<String> patterns) {
+		final Node root = new Node();
+		for (String pattern : patterns) {
+			if (pattern.isEmpty() || pattern.charAt(0) != '/') {
+				throw new IllegalArgumentException("path pattern must start with '/': " + pattern);
+			}
+
+			final int wildcard = pattern.indexOf('*');
+			if (wildcard < 0) {
+				root.descend(pattern, pattern.length()).exact = true;
+			} else if (wildcard == pattern.length() - 2 && pattern.endsWith("/**")) {
+				final Node node = root.descend(pattern, wildcard);
+				node.prefix = true;
+				// /static/** also matches /static
+				root.descend(pattern, wildcard - 1).exact = true;
+			} else {
+				root.descend(pattern, wildcard).addGlob(pattern.substring(wildcard).toCharArray());
+			}
+		}
+		return new PathMatcher(root);
+	}
+
+	boolean matches(DataChunk path) {
+		final int length = path.getLength();
+		Node node = root;
+		int idx = 0;
+		while (true) {
+			if (node.prefix) {
+				return true;
+			}
+			for (char[] glob : node.globs) {
+				if (globMatches(glob, 0, path, idx, length)) {
+					return true;
+				}
+			}
+			if (idx == length) {
+				return node.exact;
+			}
+			node = node.child(DataChunks.charAt(path, idx++));
+			if (node == null) {
+				return false;
+			}
+		}
+	}
+
+	private static boolean globMatches(char[] glob, int g, DataChunk path, int p, int length) {
+		while (g < glob.length) {
+			final char c = glob[g];
+			if (c == '*') {
+				final boolean crossSegments = g + 1 < glob.length && glob[g + 1] == '*';
+				final int rest = crossSegments ? g + 2 : g + 1;
+				if (crossSegments && rest < glob.length && glob[rest] == '/' && globMatches(glob, rest + 1, path, p, length)) {
+					// **/ also matches no segment at all
+					return true;
+				}
+				for (int i = p; i <= length; i++) {
+					if (globMatches(glob, rest, path, i, length)) {
+						return true;
+					}
+					if (i < length && !crossSegments && DataChunks.charAt(path, i) == '/') {
+						return false;
+					}
+				}
+				return false;
+			}
+			if (p == length || DataChunks.charAt(path, p) != c) {
+				return false;
+			}
+			g++;
+			p++;
+		}
+		return p == length;
+	}
+
+	private static final class Node {
+		private static final char[][] NO_GLOBS = new char[0][];
+
+		char[] labels = new char[0];
+		Node[] children = new Node[0];
+		char[][] globs = NO_GLOBS;
+		boolean exact;
+		boolean prefix;
+
+		Node child(char label) {
+			for (int i = 0; i < labels.length; i++) {
+				if (labels[i] == label) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node descend(String pattern, int end) {
+			Node node = this;
+			for (int i = 0; i < end; i++) {
+				Node next = node.child(pattern.charAt(i));
+				if (next == null) {
+					next = new Node();
+					node.labels = Arrays.copyOf(node.labels, node.labels.length + 1);
+					node.children = Arrays.copyOf(node.children, node.children.length + 1);
+					node.labels[node.labels.length - 1] = pattern.charAt(i);
+					node.children[node.children.length - 1] = next;
+				}
+				node = next;
+			}
+			return node;
+		}
+
+		void addGlob(char[] glob) {
+			globs = Arrays.copyOf(globs, globs.length + 1);
+			globs[globs.length - 1] = glob;
+		}
+	}
+}
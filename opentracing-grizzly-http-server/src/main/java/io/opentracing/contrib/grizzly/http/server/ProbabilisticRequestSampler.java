@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+
+/**
+ * Samples the given fraction of requests.
+ *
+ * @author Jose Montoya
+ */
+public class ProbabilisticRequestSampler implements RequestSampler {
+	private final double rate;
+
+	/**
+	 * @param rate the fraction of requests to sample, between 0 and 1
+	 */
+	public ProbabilisticRequestSampler(double rate) {
+		if (rate < 0 || rate > 1) {
+			throw new IllegalArgumentException("rate must be between 0 and 1: " + rate);
+		}
+		this.rate = rate;
+	}
+
+	@Override
+	public boolean isSampled(HttpRequestPacket request) {
+		return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+
+/**
+ * Extracts span contexts only from the propagation headers a request actually carries.
+ * <p>
+ * Each propagation format is registered with the headers it is carried in. A single pass over the
+ * request's {@link MimeHeaders} finds which formats are present, and the tracer is then only handed
+ * the headers of the first present format, in registration order, falling back to the next one
+ * when that yields no context. Requests without any propagation header, most of those arriving at
+ * the edge, skip extraction altogether.
+ * <p>
+ * Formats are registered before the extractor is handed to a chain, which then only reads it.
+ *
+ * @author Jose Montoya
+ */
+public final class PropagationExtractor {
+	private static final int MAX_FORMATS = 64;
+
+	/**
+	 * The header keys in lowercase, a trailing {@code *} of a registered name making a prefix key.
+	 */
+	private byte[][] keys = new byte[0][];
+	private boolean[] prefixes = new boolean[0];
+	private int[] keyFormats = new int[0];
+	/**
+	 * A bit per first character of the keys, folded into 64 bits, ruling out most headers by their
+	 * first character alone.
+	 */
+	private long firstChars;
+	private Format<TextMap>[] formats = newFormats(0);
+
+	/**
+	 * @return an extractor for the W3C trace context, B3 single and multi header and Jaeger formats,
+	 * in that order of precedence, all of them extracted as {@link Format.Builtin#HTTP_HEADERS}
+	 */
+	public static PropagationExtractor standard() {
+		return new PropagationExtractor()
+				.format(Format.Builtin.HTTP_HEADERS, "traceparent", "tracestate")
+				.format(Format.Builtin.HTTP_HEADERS, "b3")
+				.format(Format.Builtin.HTTP_HEADERS, "x-b3-traceid", "x-b3-spanid", "x-b3-parentspanid",
+						"x-b3-sampled", "x-b3-flags")
+				.format(Format.Builtin.HTTP_HEADERS, "uber-trace-id", "uberctx-*");
+	}
+
+	/**
+	 * Registers a propagation format, after those registered before it in order of precedence.
+	 *
+	 * @param format the format the tracer extracts the headers with, which is how a tracer with a
+	 * codec registered per format is dispatched to the matching one
+	 * @param headerNames the headers the format is carried in, matched regardless of case, a name
+	 * ending in {@code *} matching every header starting with it, such as baggage headers
+	 * @return the same extractor to provide a fluent api
+	 */
+	public PropagationExtractor format(Format<TextMap> format, String... headerNames) {
+		if (formats.length == MAX_FORMATS) {
+			throw new IllegalStateException("at most " + MAX_FORMATS + " formats can be registered");
+		}
+		if (headerNames.length == 0) {
+			throw new IllegalArgumentException("a format is carried in at least one header");
+		}
+		final int formatIdx = formats.length;
+		formats = Arrays.copyOf(formats, formatIdx + 1);
+		formats[formatIdx] = format;
+
+		final int start = keys.length;
+		keys = Arrays.copyOf(keys, start + headerNames.length);
+		prefixes = Arrays.copyOf(prefixes, keys.length);
+		keyFormats = Arrays.copyOf(keyFormats, keys.length);
+		for (int i = 0; i < headerNames.length; i++) {
+			String name = headerNames[i].toLowerCase(Locale.ROOT);
+			prefixes[start + i] = name.endsWith("*");
+			if (prefixes[start + i]) {
+				name = name.substring(0, name.length() - 1);
+			}
+			if (name.isEmpty()) {
+				throw new IllegalArgumentException("header name must not be empty");
+			}
+			keys[start + i] = name.getBytes(StandardCharsets.ISO_8859_1);
+			firstChars |= 1L << name.charAt(0);
+			keyFormats[start + i] = formatIdx;
+		}
+		return this;
+	}
+
+	/**
+	 * @param tracer the tracer to extract the span context with
+	 * @param request the request carrying the context, if any
+	 * @return the extracted span context, {@code null} if the request carries no propagation
+	 * header or the tracer extracted nothing from them
+	 */
+	public SpanContext extract(Tracer tracer, HttpRequestPacket request) {
+		final MimeHeaders headers = request.getHeaders();
+		final int size = headers.size();
+		long present = 0;
+		// the format of each header, -1 for headers of none
+		int[] headerFormats = null;
+		for (int i = 0; i < size; i++) {
+			final int formatIdx = formatOf(headers.getName(i));
+			if (formatIdx >= 0) {
+				if (headerFormats == null) {
+					headerFormats = new int[size];
+					Arrays.fill(headerFormats, -1);
+				}
+				headerFormats[i] = formatIdx;
+				present |= 1L << formatIdx;
+			}
+		}
+
+		while (present != 0) {
+			final int formatIdx = Long.numberOfTrailingZeros(present);
+			final SpanContext context = tracer.extract(formats[formatIdx],
+					new FormatHeaders(headers, headerFormats, formatIdx));
+			if (context != null) {
+				return context;
+			}
+			present &= present - 1;
+		}
+		return null;
+	}
+
+	private int formatOf(DataChunk name) {
+		final int length = name.getLength();
+		if (length == 0 || (firstChars & 1L << lowerCase(DataChunks.charAt(name, 0))) == 0) {
+			return -1;
+		}
+		for (int k = 0; k < keys.length; k++) {
+			final byte[] key = keys[k];
+			// lengths rule out most of the rest without reading them
+			if (prefixes[k] ? length > key.length && startsWithLowerCase(name, key)
+					: length == key.length && startsWithLowerCase(name, key)) {
+				return keyFormats[k];
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWithLowerCase(DataChunk name, byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (lowerCase(DataChunks.charAt(name, i)) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Header names are ASCII tokens.
+	 */
+	private static int lowerCase(char c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Format<TextMap>[] newFormats(int length) {
+		return new Format[length];
+	}
+
+	/**
+	 * Carrier over the headers of a single format, walking the request's headers in place.
+	 */
+	private static final class FormatHeaders implements TextMap {
+		private final MimeHeaders headers;
+		private final int[] headerFormats;
+		private final int formatIdx;
+
+		FormatHeaders(MimeHeaders headers, int[] headerFormats, int formatIdx) {
+			this.headers = headers;
+			this.headerFormats = headerFormats;
+			this.formatIdx = formatIdx;
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+			return new Iterator<Map.Entry<String, String>>() {
+				private int idx = advance(0);
+
+				@Override
+				public boolean hasNext() {
+					return idx < headerFormats.length;
+				}
+
+				@Override
+				public Map.Entry<String, String> next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					final Map.Entry<String, String> entry = new GizzlyHttpRequestPacketAdapter.HeaderEntry(headers, idx);
+					idx = advance(idx + 1);
+					return entry;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		private int advance(int from) {
+			int idx = from;
+			while (idx < headerFormats.length && headerFormats[idx] != formatIdx) {
+				idx++;
+			}
+			return idx;
+		}
+
+		@Override
+		public void put(String key, String value) {
+			throw new UnsupportedOperationException("carrier is extract only");
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.Map;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tag;
+
+/**
+ * Stands in for the server span of a request traced at {@link TracingGovernor.TracingLevel#PROPAGATION_ONLY}.
+ * It only carries the context extracted from the request, so spans started while it is active are
+ * children of the caller's span, and otherwise records nothing.
+ *
+ * @author Jose Montoya
+ */
+final class PropagationSpan implements Span {
+	private final SpanContext context;
+
+	PropagationSpan(SpanContext context) {
+		this.context = context;
+	}
+
+	@Override
+	public SpanContext context() {
+		return context;
+	}
+
+	@Override
+	public Span setTag(String key, String value) {
+		return this;
+	}
+
+	@Override
+	public Span setTag(String key, boolean value) {
+		return this;
+	}
+
+	@Override
+	public Span setTag(String key, Number value) {
+		return this;
+	}
+
+	@Override
+	public <T> Span setTag(Tag<T> tag, T value) {
+		return this;
+	}
+
+	@Override
+	public Span log(Map<String, ?> fields) {
+		return this;
+	}
+
+	@Override
+	public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+		return this;
+	}
+
+	@Override
+	public Span log(String event) {
+		return this;
+	}
+
+	@Override
+	public Span log(long timestampMicroseconds, String event) {
+		return this;
+	}
+
+	@Override
+	public Span setBaggageItem(String key, String value) {
+		return this;
+	}
+
+	@Override
+	public String getBaggageItem(String key) {
+		for (Map.Entry<String, String> item : context.baggageItems()) {
+			if (item.getKey().equals(key)) {
+				return item.getValue();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Span setOperationName(String operationName) {
+		return this;
+	}
+
+	@Override
+	public void finish() {
+	}
+
+	@Override
+	public void finish(long finishMicros) {
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+
+/**
+ * Caps the number of sampled requests per second with a token bucket that holds at most one
+ * second worth of tokens, and at least one token for rates below one request per second.
+ * <p>
+ * The bucket is kept as a single theoretical arrival time (the generic cell rate algorithm), so
+ * taking a token is one compare-and-set and no lock or background refill is needed.
+ *
+ * @author Jose Montoya
+ */
+public class RateLimitingRequestSampler implements RequestSampler {
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final AtomicLong theoreticalArrival;
+
+	/**
+	 * @param requestsPerSecond the maximum number of requests sampled per second
+	 */
+	public RateLimitingRequestSampler(double requestsPerSecond) {
+		if (requestsPerSecond <= 0) {
+			throw new IllegalArgumentException("requestsPerSecond must be positive: " + requestsPerSecond);
+		}
+		this.intervalNanos = Math.max(1L, (long) (NANOS_PER_SECOND / requestsPerSecond));
+		// no burst beyond the one token at rates below one per second
+		this.burstNanos = Math.max(0L, NANOS_PER_SECOND - intervalNanos);
+		this.theoreticalArrival = new AtomicLong(System.nanoTime() - NANOS_PER_SECOND);
+	}
+
+	@Override
+	public boolean isSampled(HttpRequestPacket request) {
+		return tryAcquire(System.nanoTime());
+	}
+
+	boolean tryAcquire(long now) {
+		while (true) {
+			final long tat = theoreticalArrival.get();
+			final long start = tat - now > 0 ? tat : now;
+			if (start - now > burstNanos) {
+				return false;
+			}
+			if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+				return true;
+			}
+		}
+	}
+}
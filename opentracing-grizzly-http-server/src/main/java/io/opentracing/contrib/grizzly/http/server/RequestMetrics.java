@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.glassfish.grizzly.http.Method;
+
+/**
+ * Rate, errors and duration of the requests served by traced chains, kept per route, request
+ * method and response status class, so no separate metrics filter has to look at the requests
+ * again. Routes are only known when the chain resolves them, see
+ * {@link TracedFilterChainBuilder#withRouteResolver(RouteResolver)}, and are capped in number
+ * there.
+ * <p>
+ * Each series is a handful of {@link LongAdder}s, a request count, an error count, a duration sum
+ * and one per duration bucket, created the first time a request falls into it. Recording a
+ * request is a few uncontended increments; reading them happens through {@link #snapshot()}, at
+ * whatever pace the metrics system pulls.
+ * <p>
+ * Requests that are not sampled are counted too. Requests on excluded paths are not.
+ *
+ * @author Jose Montoya
+ */
+public class RequestMetrics {
+	/**
+	 * Upper bounds of the duration buckets, the last bucket counts everything above the largest.
+	 */
+	private static final long[] BUCKET_BOUNDS_NANOS = {
+			TimeUnit.MICROSECONDS.toNanos(500),
+			TimeUnit.MILLISECONDS.toNanos(1),
+			TimeUnit.MILLISECONDS.toNanos(2),
+			TimeUnit.MILLISECONDS.toNanos(5),
+			TimeUnit.MILLISECONDS.toNanos(10),
+			TimeUnit.MILLISECONDS.toNanos(25),
+			TimeUnit.MILLISECONDS.toNanos(50),
+			TimeUnit.MILLISECONDS.toNanos(100),
+			TimeUnit.MILLISECONDS.toNanos(250),
+			TimeUnit.MILLISECONDS.toNanos(500),
+			TimeUnit.SECONDS.toNanos(1),
+			TimeUnit.SECONDS.toNanos(2),
+			TimeUnit.SECONDS.toNanos(5),
+			TimeUnit.SECONDS.toNanos(10)};
+
+	private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx", "other"};
+	/**
+	 * Stands for the unknown route in the map, which can't hold {@code null} keys.
+	 */
+	private static final String UNKNOWN_ROUTE = "";
+
+	private final ConcurrentMap<String, AtomicReferenceArray<Series>> routes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param route the route template, {@code null} if unknown
+	 * @param method the request method
+	 * @param status the response status, 0 if no response was written
+	 * @param failed whether handling the request threw
+	 * @param durationNanos from the request header being read to the request completing
+	 */
+	void record(String route, Method method, int status, boolean failed, long durationNanos) {
+		final String key = route == null ? UNKNOWN_ROUTE : route;
+		AtomicReferenceArray<Series> series = routes.get(key);
+		if (series == null) {
+			routes.putIfAbsent(key, new AtomicReferenceArray<Series>(HttpMethods.COUNT * STATUS_CLASSES.length));
+			series = routes.get(key);
+		}
+
+		final int statusClass = status >= 100 && status < 600 ? status / 100 - 1 : STATUS_CLASSES.length - 1;
+		final int idx = HttpMethods.index(method) * STATUS_CLASSES.length + statusClass;
+		Series s = series.get(idx);
+		if (s == null) {
+			series.compareAndSet(idx, null, new Series());
+			s = series.get(idx);
+		}
+
+		s.count.increment();
+		if (failed || status >= 500) {
+			s.errors.increment();
+		}
+		s.durationNanos.add(durationNanos);
+		s.buckets[bucketIndex(durationNanos)].increment();
+	}
+
+	/**
+	 * @return the current values of every series that recorded at least one request
+	 */
+	public List<SeriesSnapshot> snapshot() {
+		final List<SeriesSnapshot> snapshot = new ArrayList<>();
+		for (Map.Entry<String, AtomicReferenceArray<Series>> route : routes.entrySet()) {
+			final AtomicReferenceArray<Series> series = route.getValue();
+			for (int idx = 0; idx < series.length(); idx++) {
+				final Series s = series.get(idx);
+				if (s == null) {
+					continue;
+				}
+				final long[] bucketCounts = new long[s.buckets.length];
+				for (int i = 0; i < bucketCounts.length; i++) {
+					bucketCounts[i] = s.buckets[i].sum();
+				}
+				snapshot.add(new SeriesSnapshot(
+						route.getKey() == UNKNOWN_ROUTE ? null : route.getKey(),
+						HttpMethods.name(idx / STATUS_CLASSES.length),
+						STATUS_CLASSES[idx % STATUS_CLASSES.length],
+						s.count.sum(),
+						s.errors.sum(),
+						s.durationNanos.sum(),
+						bucketCounts));
+			}
+		}
+		return Collections.unmodifiableList(snapshot);
+	}
+
+	private static int bucketIndex(long durationNanos) {
+		int i = 0;
+		while (i < BUCKET_BOUNDS_NANOS.length && durationNanos > BUCKET_BOUNDS_NANOS[i]) {
+			i++;
+		}
+		return i;
+	}
+
+	private static final class Series {
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder durationNanos = new LongAdder();
+		final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+
+		Series() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * The values of one series at the time of the snapshot. The adders are read one after the
+	 * other while requests keep being recorded, so the values may be off by the few requests
+	 * recorded in the meantime.
+	 */
+	public static final class SeriesSnapshot {
+		private final String route;
+		private final String method;
+		private final String statusClass;
+		private final long count;
+		private final long errorCount;
+		private final long durationSumNanos;
+		private final long[] bucketCounts;
+
+		SeriesSnapshot(String route, String method, String statusClass, long count, long errorCount,
+				long durationSumNanos, long[] bucketCounts) {
+			this.route = route;
+			this.method = method;
+			this.statusClass = statusClass;
+			this.count = count;
+			this.errorCount = errorCount;
+			this.durationSumNanos = durationSumNanos;
+			this.bucketCounts = bucketCounts;
+		}
+
+		/**
+		 * @return the route template, {@code null} for requests of no known route
+		 */
+		public String getRoute() {
+			return route;
+		}
+
+		/**
+		 * @return the request method, {@code OTHER} for non standard methods
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * @return {@code 1xx} to {@code 5xx}, or {@code other} when no valid status was written
+		 */
+		public String getStatusClass() {
+			return statusClass;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the number of requests answered with a 5xx status or whose handling threw
+		 */
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		public long getDurationSumNanos() {
+			return durationSumNanos;
+		}
+
+		/**
+		 * @return the upper bound of each duration bucket but the last, which is unbounded
+		 */
+		public long[] getBucketBoundsNanos() {
+			return BUCKET_BOUNDS_NANOS.clone();
+		}
+
+		/**
+		 * @return the number of requests in each duration bucket, not cumulative
+		 */
+		public long[] getBucketCounts() {
+			return bucketCounts.clone();
+		}
+	}
+}
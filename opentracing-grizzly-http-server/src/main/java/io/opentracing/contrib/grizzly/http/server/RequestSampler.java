@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+
+/**
+ * Decides whether a request is traced at all, before any header is extracted or any span is
+ * built. Requests that are not sampled go straight to the wrapped filter.
+ * <p>
+ * Implementations are called once per request on Grizzly's selector or worker threads, so they
+ * must be thread safe and should not allocate.
+ *
+ * @author Jose Montoya
+ */
+public interface RequestSampler {
+	/**
+	 * @param request the request whose headers have just been parsed
+	 * @return true if the request should be traced
+	 */
+	boolean isSampled(HttpRequestPacket request);
+
+	RequestSampler ALWAYS = new RequestSampler() {
+		@Override
+		public boolean isSampled(HttpRequestPacket request) {
+			return true;
+		}
+	};
+
+	RequestSampler NEVER = new RequestSampler() {
+		@Override
+		public boolean isSampled(HttpRequestPacket request) {
+			return false;
+		}
+	};
+}
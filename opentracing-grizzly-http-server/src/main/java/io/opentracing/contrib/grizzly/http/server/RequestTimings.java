@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.io.IOException;
+
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+
+import io.opentracing.Span;
+
+/**
+ * Milestones of a request, recorded with {@link System#nanoTime()} into a {@code long[]} held by
+ * its {@link RequestTrace} and logged on the span, under the names below, when the request
+ * completes:
+ * <ul>
+ * <li>{@code http.request.first_byte}: the first read of the request's bytes, before the HTTP
+ * codec parsed its header,</li>
+ * <li>{@code handler.start} and {@code handler.end}: the wrapped filter handling the request
+ * header,</li>
+ * <li>{@code http.response.first_byte}: the response header handed to the HTTP codec,</li>
+ * <li>{@code http.response.last_byte}: the last response content handed to the HTTP codec.</li>
+ * </ul>
+ * The first byte is only known when no other request of the connection was read along with it,
+ * the first request of a pipelined batch gets it and the others go without.
+ *
+ * @author Jose Montoya
+ */
+final class RequestTimings {
+	static final int FIRST_BYTE_READ = 0;
+	static final int HANDLER_START = 1;
+	static final int HANDLER_END = 2;
+	static final int FIRST_BYTE_WRITTEN = 3;
+	static final int LAST_BYTE_WRITTEN = 4;
+	/**
+	 * The wall clock and nano time read when the timings were created along with their span.
+	 */
+	private static final int ANCHOR_MICROS = 5;
+	private static final int ANCHOR_NANOS = 6;
+
+	private static final String[] EVENTS = {
+			"http.request.first_byte",
+			"handler.start",
+			"handler.end",
+			"http.response.first_byte",
+			"http.response.last_byte"};
+
+	/**
+	 * The nano time of the first read on a connection not yet claimed by a request, kept in a
+	 * one element array so that updating it does not box.
+	 */
+	private static final Attribute<long[]> PENDING_READ =
+			Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(RequestTimings.class.getName() + ".pendingRead");
+
+	private RequestTimings() {
+	}
+
+	static long[] create() {
+		final long[] timings = new long[EVENTS.length + 2];
+		timings[ANCHOR_MICROS] = MonotonicClock.nowMicros();
+		timings[ANCHOR_NANOS] = System.nanoTime();
+		return timings;
+	}
+
+	/**
+	 * Clears the milestones of reused timings and anchors them anew.
+	 */
+	static void reset(long[] timings) {
+		for (int i = 0; i < EVENTS.length; i++) {
+			timings[i] = 0;
+		}
+		timings[ANCHOR_MICROS] = MonotonicClock.nowMicros();
+		timings[ANCHOR_NANOS] = System.nanoTime();
+	}
+
+	static void stamp(long[] timings, int milestone) {
+		if (timings != null && timings[milestone] == 0) {
+			timings[milestone] = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Claims the pending first read of the connection, if any. Called for every HTTP message read,
+	 * so that reads of a request's body don't count as the first byte of the next one.
+	 *
+	 * @return the nano time of the pending read, 0 if there is none
+	 */
+	static long claimPendingRead(Connection<?> connection) {
+		final long[] pending = connection == null ? null : PENDING_READ.get(connection);
+		if (pending == null) {
+			return 0;
+		}
+		final long readNanos = pending[0];
+		pending[0] = 0;
+		return readNanos;
+	}
+
+	static void log(Span span, long[] timings) {
+		for (int i = 0; i < EVENTS.length; i++) {
+			if (timings[i] != 0) {
+				span.log(MonotonicClock.toEpochMicros(timings[ANCHOR_MICROS], timings[ANCHOR_NANOS], timings[i]), EVENTS[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sits in front of the HTTP codec and notes when a connection's bytes are first read.
+	 */
+	static final class FirstReadFilter extends BaseFilter {
+		@Override
+		public NextAction handleRead(FilterChainContext ctx) throws IOException {
+			final Connection<?> connection = ctx.getConnection();
+			long[] pending = PENDING_READ.get(connection);
+			if (pending == null) {
+				pending = new long[1];
+				PENDING_READ.set(connection, pending);
+			}
+			if (pending[0] == 0) {
+				pending[0] = System.nanoTime();
+			}
+			return ctx.getInvokeAction();
+		}
+	}
+}
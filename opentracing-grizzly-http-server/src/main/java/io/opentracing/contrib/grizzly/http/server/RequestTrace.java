@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+
+import io.opentracing.Span;
+
+/**
+ * The tracing state of a single request: its server span, whether its response was tagged and,
+ * when enabled, the {@link RequestTimings} recorded along the way and what {@link RequestMetrics}
+ * need to know about it. Pipelined requests of a keep-alive connection each have their own
+ * packet, hence their own state.
+ * <p>
+ * It is carried as a Grizzly {@link Attribute} on the {@link HttpRequestPacket} itself. Attributes
+ * are indexed slots in the packet's own holder, so storing and looking it up costs no lock and no
+ * global map, and the slot is cleared together with the packet when Grizzly recycles it.
+ *
+ * @author Jose Montoya
+ */
+final class RequestTrace {
+	/**
+	 * Marks a request that was deliberately left untraced and unmeasured, so that later reads of
+	 * the same request don't reconsider it and the response side can skip it with an identity
+	 * check.
+	 */
+	static final RequestTrace UNTRACED = new RequestTrace(null, null, 0);
+
+	private static final Attribute<RequestTrace> TRACE =
+			Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(RequestTrace.class.getName());
+
+	/**
+	 * {@code null} for requests that are measured but not traced.
+	 */
+	final Span span;
+	/**
+	 * {@link System#nanoTime()} of each milestone indexed as in {@link RequestTimings}, 0 until it
+	 * is reached. {@code null} when timings are not recorded.
+	 */
+	final long[] timings;
+	/**
+	 * Set once the response decorators ran, so later content chunks of the same response skip them.
+	 * Only ever touched by the thread writing the response.
+	 */
+	boolean responseTagged;
+	/**
+	 * {@link System#nanoTime()} when the request header was read, 0 when metrics are not recorded.
+	 */
+	final long startNanos;
+	/**
+	 * The status of the response, 0 until its header is written.
+	 */
+	int status;
+	/**
+	 * Whether handling the request threw.
+	 */
+	boolean failed;
+	/**
+	 * Content bytes read and written, counted only when body sizes are recorded.
+	 */
+	long requestBytes;
+	long responseBytes;
+	/**
+	 * The value of the {@link TraceResponseHeaders}, encoded when the span started. {@code null}
+	 * when they are not added.
+	 */
+	byte[] traceResponse;
+	/**
+	 * What {@link TailCapture} records of the request, holding its timings. {@code null} when the
+	 * tail is not captured.
+	 */
+	TailCapture.Entry tailEntry;
+	/**
+	 * The decorators the span is tagged with, fewer than configured when tracing was stepped down.
+	 */
+	GrizzlyServerSpanDecorator[] decorators;
+	/**
+	 * The time spent starting the span, only measured for the {@link TracingGovernor}.
+	 */
+	long overheadNanos;
+	/**
+	 * The completion of a request whose body is still being read, registered with its last read.
+	 * Later reads of the body may run on other worker threads than the one that set it.
+	 */
+	volatile FilterChainContext.CompletionListener unread;
+
+	RequestTrace(Span span, long[] timings, long startNanos) {
+		this.span = span;
+		this.timings = timings;
+		this.startNanos = startNanos;
+	}
+
+	static RequestTrace get(HttpRequestPacket request) {
+		return TRACE.get(request);
+	}
+
+	static void set(HttpRequestPacket request, RequestTrace trace) {
+		TRACE.set(request, trace);
+	}
+
+	static void remove(HttpRequestPacket request) {
+		TRACE.remove(request);
+	}
+}
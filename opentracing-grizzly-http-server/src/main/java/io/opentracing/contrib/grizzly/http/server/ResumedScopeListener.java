@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.Context;
+import org.glassfish.grizzly.IOEventLifeCycleListener;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * Activates the span of a suspended request on whichever thread resumes it, and closes that scope
+ * when the resumed processing suspends again or ends. Registered on the request's processing
+ * {@link Context} before the request is handled, so a resume racing the handler's return is not
+ * missed, and removed once the request is handled without suspending or its processing completes,
+ * so it never outlives the request into the next use of the context.
+ * <p>
+ * The scope is only ever touched by the thread currently processing the context: opened by the
+ * resuming thread and closed by it when that processing suspends or completes. The hand-off
+ * between threads goes through the executor resuming the context, the field is volatile so that
+ * it does not depend on that.
+ *
+ * @author Jose Montoya
+ */
+final class ResumedScopeListener extends IOEventLifeCycleListener.Adapter
+		implements FilterChainContext.CompletionListener {
+	private final Tracer tracer;
+	private final Span span;
+	private volatile Scope scope;
+
+	ResumedScopeListener(Tracer tracer, Span span) {
+		this.tracer = tracer;
+		this.span = span;
+	}
+
+	void register(FilterChainContext ctx) {
+		ctx.getInternalContext().addLifeCycleListener(this);
+		ctx.addCompletionListener(this);
+	}
+
+	void unregister(FilterChainContext ctx) {
+		ctx.getInternalContext().removeLifeCycleListener(this);
+		ctx.removeCompletionListener(this);
+	}
+
+	@Override
+	public void onContextResume(Context context) {
+		close();
+		scope = tracer.scopeManager().activate(span);
+	}
+
+	@Override
+	public void onContextSuspend(Context context) {
+		close();
+	}
+
+	@Override
+	public void onComplete(Context context, Object data) {
+		close();
+	}
+
+	@Override
+	public void onComplete(FilterChainContext context) {
+		close();
+		// the completion listeners are cleared by the context itself
+		context.getInternalContext().removeLifeCycleListener(this);
+	}
+
+	@Override
+	public void onLeave(Context context) {
+		close();
+	}
+
+	@Override
+	public void onTerminate(Context context) {
+		close();
+	}
+
+	@Override
+	public void onError(Context context, Object description) {
+		close();
+	}
+
+	private void close() {
+		final Scope current = scope;
+		if (current != null) {
+			scope = null;
+			current.close();
+		}
+	}
+}
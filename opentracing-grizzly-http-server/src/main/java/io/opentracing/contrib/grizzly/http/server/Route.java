@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.Method;
+
+/**
+ * A route template along with the operation names of its spans, built once per method so that
+ * naming a span concatenates nothing. Once routes are resolved, non standard methods share a single
+ * {@code OTHER} name, which keeps the number of operation names bounded by the number of routes.
+ *
+ * @author Jose Montoya
+ */
+final class Route {
+	/**
+	 * Requests that belong to no known route, named after their method only.
+	 */
+	static final Route UNKNOWN = new Route(null, true);
+	/**
+	 * Requests of chains that resolve no routes, named after their method as they always were, non
+	 * standard ones included.
+	 */
+	static final Route NONE = new Route(null, false);
+
+	/**
+	 * {@code null} for {@link #UNKNOWN}.
+	 */
+	final String template;
+	private final String[] operationNames = new String[HttpMethods.COUNT];
+	private final boolean otherShared;
+
+	Route(String template) {
+		this(template, true);
+	}
+
+	private Route(String template, boolean otherShared) {
+		this.template = template;
+		this.otherShared = otherShared;
+		for (int i = 0; i < HttpMethods.COUNT; i++) {
+			operationNames[i] = operationName(HttpMethods.name(i), template);
+		}
+	}
+
+	String operationName(Method method) {
+		final int idx = HttpMethods.index(method);
+		if (idx == HttpMethods.OTHER && !otherShared) {
+			return "HTTP::" + method.getMethodString();
+		}
+		return operationNames[idx];
+	}
+
+	private static String operationName(String method, String template) {
+		return template == null ? "HTTP::" + method : "HTTP::" + method + " " + template;
+	}
+}
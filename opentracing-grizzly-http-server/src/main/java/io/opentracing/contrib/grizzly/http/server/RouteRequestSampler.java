@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+
+/**
+ * Delegates to a different sampler depending on the path of the request, for example to sample
+ * every checkout but only a fraction of catalog browsing. The longest matching path prefix wins.
+ * The prefixes are compared against the request URI in place.
+ *
+ * @author Jose Montoya
+ */
+public class RouteRequestSampler implements RequestSampler {
+	private final String[] prefixes;
+	private final RequestSampler[] samplers;
+	private final RequestSampler fallback;
+
+	private RouteRequestSampler(List<Route> routes, RequestSampler fallback) {
+		this.prefixes = new String[routes.size()];
+		this.samplers = new RequestSampler[routes.size()];
+		for (int i = 0; i < routes.size(); i++) {
+			prefixes[i] = routes.get(i).prefix;
+			samplers[i] = routes.get(i).sampler;
+		}
+		this.fallback = fallback;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public boolean isSampled(HttpRequestPacket request) {
+		final DataChunk uri = request.getRequestURIRef().getRequestURIBC();
+		for (int i = 0; i < prefixes.length; i++) {
+			if (uri.startsWith(prefixes[i], 0)) {
+				return samplers[i].isSampled(request);
+			}
+		}
+		return fallback.isSampled(request);
+	}
+
+	public static final class Builder {
+		private final List<Route> routes = new ArrayList<>();
+		private RequestSampler fallback = RequestSampler.ALWAYS;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param pathPrefix the prefix of the request paths to sample with the given sampler
+		 * @param sampler the sampler for those paths
+		 * @return the same builder to provide a fluent api
+		 */
+		public Builder route(String pathPrefix, RequestSampler sampler) {
+			routes.add(new Route(pathPrefix, sampler));
+			return this;
+		}
+
+		/**
+		 * @param sampler the sampler for paths that match no route, {@link RequestSampler#ALWAYS} by
+		 *                default
+		 * @return the same builder to provide a fluent api
+		 */
+		public Builder otherwise(RequestSampler sampler) {
+			this.fallback = sampler;
+			return this;
+		}
+
+		public RouteRequestSampler build() {
+			final List<Route> sorted = new ArrayList<>(routes);
+			Collections.sort(sorted, new Comparator<Route>() {
+				@Override
+				public int compare(Route a, Route b) {
+					return b.prefix.length() - a.prefix.length();
+				}
+			});
+			return new RouteRequestSampler(sorted, fallback);
+		}
+	}
+
+	private static final class Route {
+		final String prefix;
+		final RequestSampler sampler;
+
+		Route(String prefix, RequestSampler sampler) {
+			this.prefix = prefix;
+			this.sampler = sampler;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+
+/**
+ * Maps a request to the template of the route it belongs to, such as {@code /users/{id}}, which
+ * then names its span and groups its metrics.
+ * <p>
+ * Resolved routes are cached by request path, so a resolver must only look at the path, and the
+ * number of distinct templates is capped, see
+ * {@link TracedFilterChainBuilder#withRouteResolver(RouteResolver, int)}.
+ *
+ * @author Jose Montoya
+ */
+public interface RouteResolver {
+	/**
+	 * @return the route template of the request, {@code null} if it belongs to no known route
+	 */
+	String resolve(HttpRequestPacket request);
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+
+/**
+ * Resolves the {@link Route} of requests with a {@link RouteResolver}, behind two bounds:
+ * <ul>
+ * <li>resolved paths are cached by their bytes in a fixed size table, where a path evicts
+ * whichever path occupied its slot, so unique or hostile paths only churn the table,</li>
+ * <li>at most {@code maxRoutes} distinct templates are handed out, templates resolved beyond that
+ * share the {@link #OVERFLOW} route so they can't flood the tracing backend.</li>
+ * </ul>
+ * The table is read and written without locks, two threads resolving the same path at once both
+ * call the resolver and one of their entries stays.
+ *
+ * @author Jose Montoya
+ */
+final class Routes {
+	static final String OVERFLOW = "{other}";
+
+	private final RouteResolver resolver;
+	private final int maxRoutes;
+	private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+	private final AtomicInteger routeCount = new AtomicInteger();
+	private final Route overflow = new Route(OVERFLOW);
+	private final AtomicReferenceArray<Entry> cache;
+	private final int mask;
+
+	Routes(RouteResolver resolver, int maxRoutes, int cacheSize) {
+		if (maxRoutes <= 0) {
+			throw new IllegalArgumentException("maxRoutes must be positive: " + maxRoutes);
+		}
+		this.resolver = resolver;
+		this.maxRoutes = maxRoutes;
+		final int size = Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+		this.cache = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	Route route(HttpRequestPacket request) {
+		final DataChunk path = request.getRequestURIRef().getRequestURIBC();
+		final int length = path.getLength();
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + DataChunks.charAt(path, i);
+		}
+		final int slot = (hash ^ (hash >>> 16)) & mask;
+
+		final Entry cached = cache.get(slot);
+		if (cached != null && cached.hash == hash && cached.matches(path, length)) {
+			return cached.route;
+		}
+
+		final Route route = intern(resolver.resolve(request));
+		final byte[] key = new byte[length];
+		for (int i = 0; i < length; i++) {
+			key[i] = (byte) DataChunks.charAt(path, i);
+		}
+		cache.set(slot, new Entry(key, hash, route));
+		return route;
+	}
+
+	private Route intern(String template) {
+		if (template == null) {
+			return Route.UNKNOWN;
+		}
+		final Route known = routes.get(template);
+		if (known != null) {
+			return known;
+		}
+		if (routeCount.incrementAndGet() > maxRoutes) {
+			routeCount.decrementAndGet();
+			return overflow;
+		}
+		final Route raced = routes.putIfAbsent(template, new Route(template));
+		if (raced != null) {
+			routeCount.decrementAndGet();
+			return raced;
+		}
+		return routes.get(template);
+	}
+
+	private static final class Entry {
+		final byte[] path;
+		final int hash;
+		final Route route;
+
+		Entry(byte[] path, int hash, Route route) {
+			this.path = path;
+			this.hash = hash;
+			this.route = route;
+		}
+
+		boolean matches(DataChunk chunk, int length) {
+			if (path.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if ((path[i] & 0xFF) != DataChunks.charAt(chunk, i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
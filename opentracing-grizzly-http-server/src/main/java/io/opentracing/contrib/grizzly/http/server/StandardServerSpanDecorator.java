@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+
+/**
+ * The standard set of HTTP server tags, see {@link GrizzlyServerSpanDecorator#STANDARD_TAGS}.
+ */
+public class StandardServerSpanDecorator implements GrizzlyServerSpanDecorator {
+    static final String COMPONENT_NAME = "java-grizzly-http-server";
+
+    private final boolean includeQueryString;
+
+    public StandardServerSpanDecorator() {
+        this(true);
+    }
+
+    /**
+     * @param includeQueryString whether {@code http.url} should carry the query string, leave it
+     *                           out when query strings are long or carry sensitive values
+     */
+    public StandardServerSpanDecorator(boolean includeQueryString) {
+        this.includeQueryString = includeQueryString;
+    }
+
+    @Override
+    public void onRequest(HttpRequestPacket request, Span span) {
+        Tags.COMPONENT.set(span, COMPONENT_NAME);
+        Tags.HTTP_METHOD.set(span, request.getMethod().getMethodString());
+        Tags.SPAN_KIND.set(span, Tags.SPAN_KIND_SERVER);
+        onRequestUrl(request, span);
+    }
+
+    /**
+     * The only request tag that is not known before the span starts, see {@link BaseTags}.
+     */
+    void onRequestUrl(HttpRequestPacket request, Span span) {
+        Tags.HTTP_URL.set(span, getUri(request));
+    }
+
+    @Override
+    public void onResponse(HttpResponsePacket response, Span span) {
+        Tags.HTTP_STATUS.set(span, response.getStatus());
+    }
+
+    @Override
+    public void onError(Throwable thrown, Span span) {
+        span.setTag(Tags.ERROR, Boolean.TRUE);
+        span.log(new ErrorLogFields(thrown));
+    }
+
+    protected String getUri(HttpRequestPacket request) {
+        return HttpUrlBuilder.build(request, includeQueryString);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.glassfish.grizzly.http.HttpHeader;
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+import io.opentracing.Span;
+
+/**
+ * Full detail for the slowest requests only.
+ * <p>
+ * Every traced request records its {@link RequestTimings} into an entry of a preallocated pool and
+ * counts its body sizes without tagging anything. When it completes, its duration goes into a
+ * histogram whose percentile, recomputed every window of requests with older windows decaying, is
+ * the threshold above which a request counts as an outlier. Only outliers have their entry
+ * promoted onto their span, along with their request and response headers, except those carrying
+ * credentials and with values cut to {@value HeaderTags#DEFAULT_MAX_VALUE_LENGTH} characters.
+ * <p>
+ * Headers are copied as raw bytes into the entry while they are still valid, when the request is
+ * handed to the handler and when its response is first written, since Grizzly recycles both
+ * packets before the request completes. Tag strings are only built for outliers.
+ * <p>
+ * An entry belongs to its request until the request completed and its handler returned, the slow
+ * requests this is after never share theirs. Requests that find no free entry nearby get one of
+ * their own.
+ *
+ * @author Jose Montoya
+ */
+final class TailCapture {
+	static final String THRESHOLD_TAG = "tail_capture.threshold_ns";
+	static final int DEFAULT_SLOTS = 512;
+	private static final String REQUEST_HEADER_PREFIX = HeaderTags.TAG_PREFIX;
+	private static final String RESPONSE_HEADER_PREFIX = "http.response.header.";
+	/**
+	 * Credentials never make it onto a span.
+	 */
+	private static final byte[][] SENSITIVE_HEADERS = {
+			"authorization".getBytes(StandardCharsets.ISO_8859_1),
+			"proxy-authorization".getBytes(StandardCharsets.ISO_8859_1),
+			"cookie".getBytes(StandardCharsets.ISO_8859_1),
+			"set-cookie".getBytes(StandardCharsets.ISO_8859_1),
+			"x-api-key".getBytes(StandardCharsets.ISO_8859_1),
+			"x-auth-token".getBytes(StandardCharsets.ISO_8859_1)};
+	private static final int MIN_WINDOW = 1024;
+	/**
+	 * Four buckets per power of two, so a threshold is within 25% of the exact percentile.
+	 */
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+	/**
+	 * Requests are counted per thread stripe, each on its own cache line.
+	 */
+	private static final int STRIPES = 8;
+	private static final int STRIPE_PADDING = 8;
+	private static final int MAX_PROBES = 16;
+	private static final AtomicLongFieldUpdater<TailCapture> NEXT_RECOMPUTE =
+			AtomicLongFieldUpdater.newUpdater(TailCapture.class, "nextRecompute");
+
+	private final double percentile;
+	private final long window;
+	/**
+	 * A stripe checks whether a window completed every time it counted a multiple of a power of
+	 * two of requests, at most a 128th of the window, so windows complete late by a few requests
+	 * per stripe at most.
+	 */
+	private final long checkMask;
+	private final Entry[] entries;
+	private final int mask;
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final AtomicLongArray recorded = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+	private volatile long nextRecompute;
+	private volatile long thresholdNanos = Long.MAX_VALUE;
+
+	/**
+	 * @param percentile the share of requests, between 0 and 1 exclusive, faster than the outliers
+	 */
+	TailCapture(double percentile) {
+		this(percentile, DEFAULT_SLOTS, Math.max(MIN_WINDOW, (long) Math.ceil(10 / (1 - percentile))));
+	}
+
+	TailCapture(double percentile, long window) {
+		this(percentile, DEFAULT_SLOTS, window);
+	}
+
+	TailCapture(double percentile, int slots, long window) {
+		if (!(percentile > 0 && percentile < 1)) {
+			throw new IllegalArgumentException("percentile must be between 0 and 1 exclusive: " + percentile);
+		}
+		if (slots <= 0 || slots > 1 << 20) {
+			throw new IllegalArgumentException("slots must be between 1 and 2^20: " + slots);
+		}
+		this.percentile = percentile;
+		this.window = window;
+		this.checkMask = Long.highestOneBit(Math.max(1, window / (STRIPES * 16))) - 1;
+		this.nextRecompute = window;
+		this.entries = new Entry[slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1];
+		this.mask = entries.length - 1;
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = new Entry(true);
+		}
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Claims a free entry for a starting request, probing from a slot of its own thread so that
+	 * threads rarely race for the same entry.
+	 */
+	Entry claim() {
+		final int start = stripe() * (entries.length / STRIPES + 1);
+		for (int i = 0; i < MAX_PROBES && i < entries.length; i++) {
+			final Entry entry = entries[(start + i) & mask];
+			if (entry.free == 1 && Entry.FREE.compareAndSet(entry, 1, 0)) {
+				entry.reset();
+				return entry;
+			}
+		}
+		final Entry entry = new Entry(false);
+		entry.reset();
+		return entry;
+	}
+
+	/**
+	 * Records the duration of a completed request.
+	 *
+	 * @return whether the request is an outlier
+	 */
+	boolean record(long durationNanos) {
+		buckets[bucket(durationNanos)].increment();
+		if ((recorded.incrementAndGet(stripe() * STRIPE_PADDING) & checkMask) == 0) {
+			final long total = recorded();
+			final long next = nextRecompute;
+			if (total >= next && NEXT_RECOMPUTE.compareAndSet(this, next, total - total % window + window)) {
+				recompute();
+			}
+		}
+		return durationNanos > thresholdNanos;
+	}
+
+	long getThresholdNanos() {
+		return thresholdNanos;
+	}
+
+	/**
+	 * Tags the span of an outlier with everything its entry recorded.
+	 */
+	void promote(Span span, Entry entry) {
+		span.setTag(THRESHOLD_TAG, thresholdNanos);
+		RequestTimings.log(span, entry.timings);
+		for (int i = 0; i < entry.headerCount; i++) {
+			final int offset = entry.headerOffsets[i * 3];
+			final int nameLength = entry.headerOffsets[i * 3 + 1];
+			final int valueLength = entry.headerOffsets[i * 3 + 2];
+			span.setTag((i < entry.requestHeaderCount ? REQUEST_HEADER_PREFIX : RESPONSE_HEADER_PREFIX)
+					+ new String(entry.headerBytes, offset, nameLength, StandardCharsets.ISO_8859_1),
+					new String(entry.headerBytes, offset + nameLength, valueLength, StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	private long recorded() {
+		long total = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			total += recorded.get(i * STRIPE_PADDING);
+		}
+		return total;
+	}
+
+	private static int stripe() {
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+
+	private void recompute() {
+		final long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		final long rank = (long) Math.ceil(total * percentile);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts[i];
+			if (cumulative >= rank) {
+				thresholdNanos = upperBound(i);
+				break;
+			}
+		}
+		// halve every count, so that recent windows weigh the most
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i].add(-(counts[i] / 2));
+		}
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return nanos < 0 ? 0 : (int) nanos;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int subBucket = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+		final int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - 2)) - 1;
+	}
+
+	private static boolean isSensitive(DataChunk name) {
+		for (byte[] sensitive : SENSITIVE_HEADERS) {
+			if (name.getLength() == sensitive.length && name.equalsIgnoreCaseLowerCase(sensitive)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * What a request records for its promotion: its timings and the raw bytes of its headers, the
+	 * name lowercased and the value cut, one after the other in a buffer reused by the requests
+	 * the entry serves. Headers that no longer fit are left out.
+	 */
+	static final class Entry {
+		static final int HEADER_BYTES = 4096;
+		static final int MAX_HEADERS = 64;
+		private static final AtomicIntegerFieldUpdater<Entry> FREE =
+				AtomicIntegerFieldUpdater.newUpdater(Entry.class, "free");
+		private static final AtomicIntegerFieldUpdater<Entry> HOLDERS =
+				AtomicIntegerFieldUpdater.newUpdater(Entry.class, "holders");
+
+		final long[] timings = RequestTimings.create();
+		final byte[] headerBytes = new byte[HEADER_BYTES];
+		/**
+		 * The offset, name length and value length of each header.
+		 */
+		final int[] headerOffsets = new int[MAX_HEADERS * 3];
+		int headerCount;
+		int requestHeaderCount;
+		private int used;
+		private final boolean pooled;
+		private volatile int free;
+		/**
+		 * The completion of the request and the return of its handler, the last to let go of the
+		 * entry frees it.
+		 */
+		private volatile int holders;
+
+		private Entry(boolean pooled) {
+			this.pooled = pooled;
+			this.free = pooled ? 1 : 0;
+		}
+
+		private void reset() {
+			RequestTimings.reset(timings);
+			headerCount = 0;
+			requestHeaderCount = 0;
+			used = 0;
+			holders = 2;
+		}
+
+		void captureRequest(HttpHeader request) {
+			capture(request.getHeaders());
+			requestHeaderCount = headerCount;
+		}
+
+		void captureResponse(HttpHeader response) {
+			capture(response.getHeaders());
+		}
+
+		/**
+		 * Called once by the request's completion and once by its handler returning.
+		 */
+		void release() {
+			if (HOLDERS.decrementAndGet(this) == 0 && pooled) {
+				free = 1;
+			}
+		}
+
+		private void capture(MimeHeaders headers) {
+			for (int i = 0; i < headers.size() && headerCount < MAX_HEADERS; i++) {
+				final DataChunk name = headers.getName(i);
+				if (isSensitive(name)) {
+					continue;
+				}
+				final DataChunk value = headers.getValue(i);
+				final int valueLength = Math.min(value.getLength(), HeaderTags.DEFAULT_MAX_VALUE_LENGTH);
+				if (used + name.getLength() + valueLength > HEADER_BYTES) {
+					continue;
+				}
+				final int offset = used;
+				used = DataChunks.copyLowerCase(name, headerBytes, used);
+				used = DataChunks.copy(value, valueLength, headerBytes, used);
+				headerOffsets[headerCount * 3] = offset;
+				headerOffsets[headerCount * 3 + 1] = name.getLength();
+				headerOffsets[headerCount * 3 + 2] = valueLength;
+				headerCount++;
+			}
+		}
+	}
+}
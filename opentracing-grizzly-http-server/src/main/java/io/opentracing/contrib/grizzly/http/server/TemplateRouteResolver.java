@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.util.DataChunk;
+
+/**
+ * Resolves requests against route templates made of path segments, where a segment in braces,
+ * such as {@code {id}} in {@code /users/{id}/orders}, matches any single non empty segment and
+ * every other segment must match literally. When several templates match, the one with the most
+ * literal segments wins, then the one given first.
+ * <p>
+ * The request path is matched in place, segment by segment, without building a {@code String}.
+ *
+ * @author Jose Montoya
+ */
+public class TemplateRouteResolver implements RouteResolver {
+	private final Template[] templates;
+
+	/**
+	 * @param templates route templates starting with {@code /}
+	 */
+	public TemplateRouteResolver(String... templates) {
+		final List<Template> compiled = new ArrayList<>(templates.length);
+		for (String template : templates) {
+			compiled.add(new Template(template));
+		}
+		// a stable sort, ties keep the given order
+		Collections.sort(compiled, new Comparator<Template>() {
+			@Override
+			public int compare(Template a, Template b) {
+				return Integer.compare(b.literals, a.literals);
+			}
+		});
+		this.templates = compiled.toArray(new Template[0]);
+	}
+
+	@Override
+	public String resolve(HttpRequestPacket request) {
+		final DataChunk path = request.getRequestURIRef().getRequestURIBC();
+		for (Template template : templates) {
+			if (template.matches(path)) {
+				return template.template;
+			}
+		}
+		return null;
+	}
+
+	private static final class Template {
+		final String template;
+		/**
+		 * The literal segments, {@code null} for placeholders.
+		 */
+		final String[] segments;
+		final int literals;
+
+		Template(String template) {
+			if (template.isEmpty() || template.charAt(0) != '/') {
+				throw new IllegalArgumentException("route template must start with '/': " + template);
+			}
+			this.template = template;
+			this.segments = template.length() == 1 ? new String[0] : template.substring(1).split("/", -1);
+			int literals = 0;
+			for (int i = 0; i < segments.length; i++) {
+				if (segments[i].startsWith("{") && segments[i].endsWith("}")) {
+					segments[i] = null;
+				} else {
+					literals++;
+				}
+			}
+			this.literals = literals;
+		}
+
+		boolean matches(DataChunk path) {
+			final int length = path.getLength();
+			if (length == 0 || DataChunks.charAt(path, 0) != '/') {
+				return false;
+			}
+			int start = 1;
+			for (int s = 0; s < segments.length; s++) {
+				if (start > length) {
+					return false;
+				}
+				int end = start;
+				while (end < length && DataChunks.charAt(path, end) != '/') {
+					end++;
+				}
+				final String segment = segments[s];
+				if (segment == null) {
+					if (end == start) {
+						return false;
+					}
+				} else if (!regionMatches(path, start, end, segment)) {
+					return false;
+				}
+				start = end + 1;
+			}
+			// every segment of the path consumed
+			return start == length + 1 || (segments.length == 0 && length == 1);
+		}
+
+		private static boolean regionMatches(DataChunk path, int start, int end, String segment) {
+			if (end - start != segment.length()) {
+				return false;
+			}
+			for (int i = 0; i < segment.length(); i++) {
+				if (DataChunks.charAt(path, start + i) != segment.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
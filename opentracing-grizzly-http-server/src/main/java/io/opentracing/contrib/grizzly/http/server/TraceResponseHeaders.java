@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.glassfish.grizzly.http.HttpResponsePacket;
+import org.glassfish.grizzly.http.util.MimeHeaders;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+
+/**
+ * Adds the span context of a response's request to its headers, so clients can correlate their
+ * timing with the server span:
+ * <pre>
+ * traceresponse: 00-0000000000000000000000000000002a-000000000000002b-01
+ * server-timing: traceparent;desc="00-0000000000000000000000000000002a-000000000000002b-01"
+ * </pre>
+ * The value is encoded once per span, when it starts, and the response only references it: header
+ * names are shared byte arrays and both header values are slices of the encoded context.
+ * <p>
+ * OpenTracing contexts don't expose whether their tracer sampled them, so the context is injected
+ * the way the tracer propagates it and the decision read back as {@link ParentSampledRequestSampler}
+ * reads it off requests. Contexts the tracer drops get no headers, and those whose propagation
+ * carries no decision are reported as sampled, since the request sampler kept them.
+ *
+ * @author Jose Montoya
+ */
+final class TraceResponseHeaders {
+	private static final byte[] TRACERESPONSE = ascii("traceresponse");
+	private static final byte[] SERVER_TIMING = ascii("server-timing");
+	private static final byte[] DESC_PREFIX = ascii("traceparent;desc=\"");
+	private static final int TRACE_ID_LENGTH = 32;
+	private static final int SPAN_ID_LENGTH = 16;
+	// 00-{trace id}-{span id}-01
+	private static final int TRACEPARENT_LENGTH = 3 + TRACE_ID_LENGTH + 1 + SPAN_ID_LENGTH + 3;
+
+	private TraceResponseHeaders() {
+	}
+
+	/**
+	 * Encodes the value of the headers for the given context, once its span started.
+	 *
+	 * @return {@code null} when the tracer did not sample the context or its ids don't fit the
+	 * trace context format
+	 */
+	static byte[] encode(Tracer tracer, SpanContext context) {
+		final String traceId = context.toTraceId();
+		final String spanId = context.toSpanId();
+		if (!isHex(traceId, TRACE_ID_LENGTH) || !isHex(spanId, SPAN_ID_LENGTH)
+				|| sampledDecision(tracer, context) == ParentSampledRequestSampler.NOT_SAMPLED) {
+			return null;
+		}
+
+		// server-timing's value wraps traceresponse's, which is its slice
+		final byte[] value = new byte[DESC_PREFIX.length + TRACEPARENT_LENGTH + 1];
+		System.arraycopy(DESC_PREFIX, 0, value, 0, DESC_PREFIX.length);
+		int idx = DESC_PREFIX.length;
+		value[idx++] = '0';
+		value[idx++] = '0';
+		value[idx++] = '-';
+		idx = padded(traceId, TRACE_ID_LENGTH, value, idx);
+		value[idx++] = '-';
+		idx = padded(spanId, SPAN_ID_LENGTH, value, idx);
+		value[idx++] = '-';
+		value[idx++] = '0';
+		value[idx++] = '1';
+		value[idx] = '"';
+		return value;
+	}
+
+	/**
+	 * @param value the value {@link #encode(Tracer, SpanContext) encoded} for the request's span
+	 */
+	static void add(HttpResponsePacket response, byte[] value) {
+		final MimeHeaders headers = response.getHeaders();
+		headers.addValue(TRACERESPONSE, 0, TRACERESPONSE.length).setBytes(value, DESC_PREFIX.length, DESC_PREFIX.length + TRACEPARENT_LENGTH);
+		headers.addValue(SERVER_TIMING, 0, SERVER_TIMING.length).setBytes(value, 0, value.length);
+	}
+
+	private static int sampledDecision(Tracer tracer, SpanContext context) {
+		final Map<String, String> injected = new HashMap<>();
+		tracer.inject(context, Format.Builtin.HTTP_HEADERS, new TextMapAdapter(injected));
+		final MimeHeaders headers = new MimeHeaders();
+		for (Map.Entry<String, String> header : injected.entrySet()) {
+			headers.addValue(header.getKey()).setString(header.getValue());
+		}
+		return ParentSampledRequestSampler.parentDecision(headers);
+	}
+
+	private static boolean isHex(String id, int maxLength) {
+		if (id == null || id.isEmpty() || id.length() > maxLength) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			final char c = id.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int padded(String id, int length, byte[] dst, int idx) {
+		for (int i = id.length(); i < length; i++) {
+			dst[idx++] = '0';
+		}
+		for (int i = 0; i < id.length(); i++) {
+			dst[idx++] = (byte) Character.toLowerCase(id.charAt(i));
+		}
+		return idx;
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+}
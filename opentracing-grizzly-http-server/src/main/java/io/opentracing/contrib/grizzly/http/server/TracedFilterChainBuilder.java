@@ -0,0 +1,364 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChain;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.http.HttpBaseFilter;
+import org.glassfish.grizzly.http.HttpServerFilter;
+
+import io.opentracing.Tracer;
+
+/**
+ * @author Jose Montoya
+ */
+public class TracedFilterChainBuilder extends FilterChainBuilder.StatelessFilterChainBuilder {
+  private static final int DEFAULT_MAX_ROUTES = 1000;
+  private static final int ROUTE_CACHE_SIZE = 4096;
+
+  private final Tracer tracer;
+  private Class<? extends BaseFilter> toWrapType = HttpServerFilter.class;
+  private int toWrapIdx = -1;
+  private final TracingSettings settings = new TracingSettings();
+
+  public TracedFilterChainBuilder(final FilterChainBuilder builder, final Tracer tracer) {
+    this.tracer = tracer;
+    addAll(builder);
+  }
+
+  public TracedFilterChainBuilder(final Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by specifying the class of the
+   * filter that should be intercepted instead of the default HttpServerFilter.
+   *
+   * @param toWrap the class of the filter to be intercepted
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder wrapping(Class<? extends BaseFilter> toWrap) {
+    this.toWrapType = toWrap;
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by specifying the index of the
+   * filter that should be intercepted.
+   *
+   * @param toWrapIdx index of the filter to intercept
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder wrapping(int toWrapIdx) {
+    this.toWrapIdx = toWrapIdx;
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by specifying the decorators
+   * that tag each span, replacing the default {@link GrizzlyServerSpanDecorator#STANDARD_TAGS}.
+   * Decorators are applied in the given order, so include the standard tags first to keep them.
+   *
+   * @param decorators the decorators to apply to every span
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withDecorators(List<GrizzlyServerSpanDecorator> decorators) {
+    settings.decorators(decorators);
+    return this;
+  }
+
+  /**
+   * @see #withDecorators(List)
+   */
+  public TracedFilterChainBuilder withDecorators(GrizzlyServerSpanDecorator... decorators) {
+    return withDecorators(Arrays.asList(decorators));
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by specifying which requests
+   * are traced. Requests the sampler turns down skip header extraction and span creation entirely.
+   *
+   * @param sampler decides, per request, whether it is traced
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withSampler(RequestSampler sampler) {
+    settings.sampler(sampler);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by specifying paths that are
+   * never traced, such as health checks and static assets. Patterns are exact paths like
+   * {@code /health}, prefixes like {@code /static/**}, or globs where {@code *} matches within a
+   * path segment and {@code **} across segments, like {@code /assets/*.css}.
+   *
+   * @param pathPatterns the paths to leave untraced
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder excluding(String... pathPatterns) {
+    settings.excludedPaths(pathPatterns.length == 0 ? null : PathMatcher.compile(Arrays.asList(pathPatterns)));
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by handing finished requests'
+   * spans to a background thread rather than finishing them on the Grizzly thread that completed
+   * the request. The finisher is not closed along with the chain.
+   *
+   * @param spanFinisher finishes spans off the Grizzly threads
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withAsyncSpanFinisher(AsyncSpanFinisher spanFinisher) {
+    settings.spanFinisher(spanFinisher);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by logging on every span when
+   * the request's first byte was read, when the wrapped filter started and finished handling it,
+   * and when the first and last bytes of the response were written.
+   *
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withTimings() {
+    settings.timings(true);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by counting requests, errors
+   * and durations per method and status class into the given metrics, whether the requests are
+   * sampled or not. Requests on excluded paths are left out.
+   *
+   * @param metrics the metrics to record requests into, possibly shared by several chains
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withMetrics(RequestMetrics metrics) {
+    settings.metrics(metrics);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by naming spans, and grouping
+   * metrics, after the route template each request resolves to, such as
+   * {@code HTTP::GET /users/{id}}. At most 1000 distinct templates are used.
+   *
+   * @param resolver maps request paths to route templates
+   * @return the same chain builder to provide a fluent api
+   * @see #withRouteResolver(RouteResolver, int)
+   */
+  public TracedFilterChainBuilder withRouteResolver(RouteResolver resolver) {
+    return withRouteResolver(resolver, DEFAULT_MAX_ROUTES);
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by naming spans, and grouping
+   * metrics, after the route template each request resolves to. Resolved routes are cached by
+   * request path; once {@code maxRoutes} distinct templates were handed out, further ones are
+   * reported as {@code {other}}. Spans of requests with non standard methods are named
+   * {@code HTTP::OTHER}, their {@code http.method} tag still carries the method.
+   *
+   * @param resolver maps request paths to route templates
+   * @param maxRoutes the maximum number of distinct route templates
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withRouteResolver(RouteResolver resolver, int maxRoutes) {
+    settings.routes(new Routes(resolver, maxRoutes, ROUTE_CACHE_SIZE));
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by tagging spans with the
+   * number of content bytes read from the request, {@code http.request_content_length}, and
+   * written to the response, {@code http.response_content_length}. Chunked bodies count their
+   * payload without the chunk framing.
+   *
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withBodySizes() {
+    settings.bodySizes(true);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by adding the span context of
+   * traced requests to their responses, as {@code traceresponse} and {@code Server-Timing} headers
+   * in the trace context format, so browsers and proxies can join their timing with the span.
+   * Responses of requests that are not sampled are left as is, whether the request sampler or the
+   * tracer turned them down. The tracer's decision is only known when the format it injects
+   * contexts in carries one, such as {@code traceparent}, B3 or {@code uber-trace-id}; otherwise
+   * the headers only reflect the request sampler, and say the trace is sampled.
+   *
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withTraceResponseHeaders() {
+    settings.traceResponse(true);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by letting the given governor
+   * step tracing down while the server is saturated, and back up once it recovers. A governor may
+   * be shared by several chains to watch them as a whole.
+   *
+   * @param governor watches the load and decides how much of each request is traced
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withGovernor(TracingGovernor governor) {
+    settings.governor(governor);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by only attaching spans to their
+   * requests, instead of also activating them through the tracer's scope manager while requests
+   * are handled. Handlers find the span of a request with {@link TracedRequests} and hand it to
+   * other threads with a {@link TracedRequestExecutor}, so nothing depends on which thread runs
+   * what.
+   *
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withRequestContextOnly() {
+    settings.activateScopes(false);
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by only detailing the slowest
+   * requests. The timings and body sizes of every request are recorded without tagging anything,
+   * and only the spans of requests slower than the given percentile of recent requests get them,
+   * along with their request and response headers, short of credentials such as
+   * {@code Authorization} and {@code Cookie}. This replaces {@link #withTimings()} and
+   * {@link #withBodySizes()}, which detail every span.
+   *
+   * @param percentile the share of requests, between 0 and 1 exclusive, that are not detailed,
+   * such as 0.999 for the slowest 0.1%
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withTailCapture(double percentile) {
+    settings.tailCapture(new TailCapture(percentile));
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by tracing connections as well
+   * as requests. A span per sampled connection runs from its accept to its close, tagged with the
+   * wait for its first request, the number of requests it carried and its lifetime, and the spans
+   * of its requests are tagged with their position on it.
+   *
+   * @param samplingRate the fraction of connections to trace, between 0 and 1, independent of the
+   * sampling of requests
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withConnectionSpans(double samplingRate) {
+    settings.connections(new ConnectionTracing(tracer, samplingRate));
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by tagging spans with the values
+   * of the given request headers, as {@code http.request.header.<name>} tags. Names are matched
+   * regardless of case and values are cut to their first
+   * {@value HeaderTags#DEFAULT_MAX_VALUE_LENGTH} characters.
+   *
+   * @param headerNames the request headers to tag spans with
+   * @return the same chain builder to provide a fluent api
+   * @see #withHeaderTags(int, String...)
+   */
+  public TracedFilterChainBuilder withHeaderTags(String... headerNames) {
+    return withHeaderTags(HeaderTags.DEFAULT_MAX_VALUE_LENGTH, headerNames);
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by tagging spans with the values
+   * of the given request headers, as {@code http.request.header.<name>} tags. Names are matched
+   * regardless of case. Only the spans of sampled requests are tagged, and only while tracing is
+   * not stepped down by a governor.
+   *
+   * @param maxValueLength the number of characters a value is cut to
+   * @param headerNames the request headers to tag spans with
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withHeaderTags(int maxValueLength, String... headerNames) {
+    settings.headerTags(headerNames.length == 0 ? null : new HeaderTags(headerNames, maxValueLength));
+    return this;
+  }
+
+  /**
+   * Utilize this method to customize the TracedFilterChainBuilder by extracting span contexts
+   * only from the propagation headers each request carries, and not at all from requests carrying
+   * none, instead of handing every header of every request to the tracer. Headers the extractor
+   * does not know of are no longer seen by the tracer, so register every format it propagates.
+   *
+   * @param extractor the propagation formats in use, such as {@link PropagationExtractor#standard()}
+   * @return the same chain builder to provide a fluent api
+   */
+  public TracedFilterChainBuilder withExtractor(PropagationExtractor extractor) {
+    settings.extractor(extractor);
+    return this;
+  }
+
+  @Override
+  public FilterChain build() {
+    if (toWrapIdx == -1) {
+      toWrapIdx = this.indexOfType(toWrapType);
+
+      // If no appropriate filter found we give up
+      if (toWrapIdx == -1) {
+        return super.build();
+      }
+      if (toWrapType == HttpServerFilter.class) {
+        toWrapIdx = indexOfLastHttpFilter(toWrapIdx);
+      }
+    }
+
+    toWrapIdx++;
+    // computed once per chain, applied to every span before it starts
+    final TracingSettings chainSettings = settings.copy().baseTags(BaseTags.of(settings.decorators));
+    if (chainSettings.tailCapture != null) {
+      // recorded for every request, only detailed on outliers
+      chainSettings.timings(true).bodySizes(true);
+    }
+    final TracingResponseHttpServerFilter responseFilter = new TracingResponseHttpServerFilter(tracer, chainSettings);
+    final TracingRequestHttpServerFilter requestFilter = new TracingRequestHttpServerFilter(patternFilterChain.get(toWrapIdx), tracer, chainSettings);
+
+    patternFilterChain.remove(toWrapIdx);
+    patternFilterChain.add(toWrapIdx, requestFilter);
+    patternFilterChain.add(toWrapIdx, responseFilter);
+    if (chainSettings.timings && toWrapIdx > 0) {
+      // in front of the filter decoding the requests
+      patternFilterChain.add(toWrapIdx - 1, new RequestTimings.FirstReadFilter());
+    }
+    return super.build();
+  }
+
+  /**
+   * Multiplexing protocols such as HTTP/2 decode their streams in a filter of their own after the
+   * HttpServerFilter, the requests of every stream are only seen after the last one of them.
+   */
+  private int indexOfLastHttpFilter(int httpServerFilterIdx) {
+    int idx = httpServerFilterIdx;
+    for (int i = httpServerFilterIdx + 1; i < patternFilterChain.size(); i++) {
+      if (patternFilterChain.get(i) instanceof HttpBaseFilter) {
+        idx = i;
+      }
+    }
+    return idx;
+  }
+}
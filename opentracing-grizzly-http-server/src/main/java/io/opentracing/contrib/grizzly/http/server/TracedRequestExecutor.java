@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.Executor;
+
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * Runs work on behalf of a request on another executor, with the request's server span active
+ * while it runs.
+ * <p>
+ * Unlike executors that capture whatever span is active on the submitting thread, the span is
+ * taken from the request itself, see {@link TracedRequests}. Nothing has to be active when the work
+ * is handed over, no thread local is inherited, and the span ends up on the right request whatever
+ * thread, pooled or not, submits or runs the work:
+ *
+ * <pre>
+ * ctx.suspend();
+ * executor.execute(ctx, new Runnable() {
+ *   public void run() {
+ *     // the request's span is active
+ *     ctx.write(response);
+ *     ctx.resume(ctx.getStopAction());
+ *   }
+ * });
+ * return ctx.getSuspendAction();
+ * </pre>
+ *
+ * @author Jose Montoya
+ */
+public final class TracedRequestExecutor implements Executor {
+	private final Executor delegate;
+	private final Tracer tracer;
+
+	/**
+	 * @param delegate runs the work
+	 * @param tracer the tracer whose scope manager activates the span
+	 */
+	public TracedRequestExecutor(Executor delegate, Tracer tracer) {
+		this.delegate = delegate;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Runs the task as is, there is no request to take a span from.
+	 */
+	@Override
+	public void execute(Runnable task) {
+		delegate.execute(task);
+	}
+
+	/**
+	 * Runs the task with the server span of the request the context is processing active, or as
+	 * is when the request is not traced.
+	 *
+	 * @param ctx the context processing the request
+	 * @param task the work to do on behalf of the request
+	 */
+	public void execute(FilterChainContext ctx, Runnable task) {
+		final Span span = TracedRequests.span(ctx);
+		delegate.execute(span == null ? task : new ActivatingRunnable(task, span));
+	}
+
+	private final class ActivatingRunnable implements Runnable {
+		private final Runnable task;
+		private final Span span;
+
+		ActivatingRunnable(Runnable task, Span span) {
+			this.task = task;
+			this.span = span;
+		}
+
+		@Override
+		public void run() {
+			try (Scope scope = tracer.scopeManager().activate(span)) {
+				task.run();
+			}
+		}
+	}
+}
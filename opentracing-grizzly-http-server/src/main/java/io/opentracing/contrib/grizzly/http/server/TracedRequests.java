@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpHeader;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopScopeManager;
+
+/**
+ * Access to the server span of a traced request from code handling it, most usefully from
+ * asynchronous handlers.
+ * <p>
+ * The span is only active on the thread that reads the request while the wrapped filter handles
+ * it, and again on the thread that resumes a suspended request through
+ * {@link FilterChainContext#resume(org.glassfish.grizzly.filterchain.NextAction)} or
+ * {@link FilterChainContext#resume()}. Work done in between on other threads, such as writing the
+ * response of a long-polling request, activates it with {@link #activate(FilterChainContext, Tracer)}:
+ *
+ * <pre>
+ * ctx.suspend();
+ * executor.execute(new Runnable() {
+ *   public void run() {
+ *     try (Scope scope = TracedRequests.activate(ctx, tracer)) {
+ *       ctx.write(response);
+ *     }
+ *     ctx.resume(ctx.getStopAction());
+ *   }
+ * });
+ * return ctx.getSuspendAction();
+ * </pre>
+ *
+ * @author Jose Montoya
+ */
+public final class TracedRequests {
+	private TracedRequests() {
+	}
+
+	/**
+	 * @return the server span of the request the context is processing, {@code null} if the message
+	 * is not HTTP content or the request is not traced
+	 */
+	public static Span span(FilterChainContext ctx) {
+		final Object message = ctx.getMessage();
+		if (!(message instanceof HttpContent)) {
+			return null;
+		}
+		final HttpHeader header = ((HttpContent) message).getHttpHeader();
+		if (header instanceof HttpResponsePacket) {
+			return span(((HttpResponsePacket) header).getRequest());
+		}
+		return header instanceof HttpRequestPacket ? span((HttpRequestPacket) header) : null;
+	}
+
+	/**
+	 * @return the server span of the request, {@code null} if it is not traced
+	 */
+	public static Span span(HttpRequestPacket request) {
+		final RequestTrace trace = request == null ? null : RequestTrace.get(request);
+		return trace == null ? null : trace.span;
+	}
+
+	/**
+	 * Activates the server span of the request the context is processing on the calling thread.
+	 *
+	 * @return the scope to close once done, a no-op one if the request is not traced
+	 */
+	public static Scope activate(FilterChainContext ctx, Tracer tracer) {
+		final Span span = span(ctx);
+		return span == null ? NoopScopeManager.NoopScope.INSTANCE : tracer.scopeManager().activate(span);
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+
+/**
+ * Sheds tracing work when the server is saturated, so tracing does not make it worse.
+ * <p>
+ * It watches two signals the filters measure cheaply: the number of requests in flight and the
+ * time the filters themselves spend per request, smoothed by an exponentially weighted moving
+ * average. Both are collected in {@link LongAdder}s and looked at no more often than once per
+ * evaluation interval, by whichever request comes along. Every evaluation with a budget exceeded
+ * steps the {@link TracingLevel level} down once. Stepping back up takes several evaluations in a
+ * row with both signals under half of their budget, so the level does not flap around a budget.
+ *
+ * @author Jose Montoya
+ */
+public class TracingGovernor {
+	private static final Logger LOGGER = Grizzly.logger(TracingGovernor.class);
+	private static final long DEFAULT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final double EWMA_WEIGHT = 0.3;
+	static final int RECOVERY_EVALUATIONS = 5;
+
+	/**
+	 * What is left of tracing, from everything down to nothing.
+	 */
+	public enum TracingLevel {
+		/**
+		 * Spans with every configured decorator.
+		 */
+		FULL,
+		/**
+		 * Spans with the span kind, method and status only, whatever the configured decorators.
+		 */
+		MINIMAL,
+		/**
+		 * No spans, the incoming context is only made active while the request is handled so
+		 * outgoing calls carry it along.
+		 */
+		PROPAGATION_ONLY,
+		/**
+		 * Nothing at all.
+		 */
+		OFF
+	}
+
+	/**
+	 * The decorators of {@link TracingLevel#MINIMAL} requests.
+	 */
+	static final GrizzlyServerSpanDecorator[] MINIMAL_TAGS = {new GrizzlyServerSpanDecorator() {
+		@Override
+		public void onRequest(HttpRequestPacket request, Span span) {
+			Tags.SPAN_KIND.set(span, Tags.SPAN_KIND_SERVER);
+			Tags.HTTP_METHOD.set(span, request.getMethod().getMethodString());
+		}
+
+		@Override
+		public void onResponse(HttpResponsePacket response, Span span) {
+			Tags.HTTP_STATUS.set(span, response.getStatus());
+		}
+
+		@Override
+		public void onError(Throwable thrown, Span span) {
+			Tags.ERROR.set(span, Boolean.TRUE);
+		}
+	}};
+
+	private static final TracingLevel[] LEVELS = TracingLevel.values();
+
+	private final long maxInFlight;
+	private final long maxOverheadNanos;
+	private final long intervalNanos;
+	private final LongSupplier clock;
+	private final LongAdder inFlight = new LongAdder();
+	private final LongAdder overheadNanos = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final AtomicLong nextEvaluation;
+	private volatile TracingLevel level = TracingLevel.FULL;
+	private volatile double averageOverheadNanos;
+	private int recoveries;
+
+	/**
+	 * Ends requests that were never traced, they only count as in flight.
+	 */
+	final FilterChainContext.CompletionListener untracedEnd = new FilterChainContext.CompletionListener() {
+		@Override
+		public void onComplete(FilterChainContext context) {
+			onRequestEnd(0);
+		}
+	};
+
+	/**
+	 * @param maxInFlight the number of requests in flight above which tracing steps down
+	 * @param maxOverhead the average time the filters may spend tracing a request
+	 * @param unit the unit of {@code maxOverhead}
+	 */
+	public TracingGovernor(int maxInFlight, long maxOverhead, TimeUnit unit) {
+		this(maxInFlight, unit.toNanos(maxOverhead), DEFAULT_INTERVAL_NANOS, new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return System.nanoTime();
+			}
+		});
+	}
+
+	TracingGovernor(int maxInFlight, long maxOverheadNanos, long intervalNanos, LongSupplier clock) {
+		if (maxInFlight <= 0 || maxOverheadNanos <= 0) {
+			throw new IllegalArgumentException("budgets must be positive");
+		}
+		this.maxInFlight = maxInFlight;
+		this.maxOverheadNanos = maxOverheadNanos;
+		this.intervalNanos = intervalNanos;
+		this.clock = clock;
+		this.nextEvaluation = new AtomicLong(clock.getAsLong() + intervalNanos);
+	}
+
+	/**
+	 * @return the level requests are currently traced at
+	 */
+	public TracingLevel getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the requests that started and have not completed yet
+	 */
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	/**
+	 * @return the smoothed time the filters spent tracing a request, as of the last evaluation
+	 */
+	public long getAverageOverheadNanos() {
+		return (long) averageOverheadNanos;
+	}
+
+	/**
+	 * Counts the request in and returns the level to trace it at.
+	 */
+	TracingLevel onRequestStart() {
+		inFlight.increment();
+		final long now = clock.getAsLong();
+		final long next = nextEvaluation.get();
+		// one request per interval gets to evaluate
+		if (now - next >= 0 && nextEvaluation.compareAndSet(next, now + intervalNanos)) {
+			evaluate();
+		}
+		return level;
+	}
+
+	/**
+	 * @param overheadNanos the time the filters spent tracing the request
+	 */
+	void onRequestEnd(long overheadNanos) {
+		inFlight.decrement();
+		this.overheadNanos.add(overheadNanos);
+		completed.increment();
+	}
+
+	private void evaluate() {
+		final long count = completed.sumThenReset();
+		final long overhead = overheadNanos.sumThenReset();
+		final double sample = count == 0 ? 0 : (double) overhead / count;
+		final double average = EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * averageOverheadNanos;
+		averageOverheadNanos = average;
+		final long requests = inFlight.sum();
+
+		final TracingLevel current = level;
+		if (requests > maxInFlight || average > maxOverheadNanos) {
+			recoveries = 0;
+			if (current != TracingLevel.OFF) {
+				changeLevel(LEVELS[current.ordinal() + 1], requests, average);
+			}
+		} else if (requests <= maxInFlight / 2 && average <= maxOverheadNanos / 2) {
+			if (current != TracingLevel.FULL && ++recoveries >= RECOVERY_EVALUATIONS) {
+				recoveries = 0;
+				changeLevel(LEVELS[current.ordinal() - 1], requests, average);
+			}
+		} else {
+			recoveries = 0;
+		}
+	}
+
+	private void changeLevel(TracingLevel next, long requests, double average) {
+		level = next;
+		LOGGER.log(Level.INFO, "Tracing level changed to {0} with {1} requests in flight and {2} ns of overhead per request",
+				new Object[] {next, requests, (long) average});
+	}
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.grizzly.http.server.TracingGovernor.TracingLevel;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.Grizzly;
+import org.glassfish.grizzly.attributes.Attribute;
+import org.glassfish.grizzly.filterchain.Filter;
+import org.glassfish.grizzly.filterchain.FilterChain;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.FilterChainEvent;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+
+import io.opentracing.propagation.Format;
+
+/**
+ * @author Jose Montoya
+ */
+public class TracingRequestHttpServerFilter implements Filter {
+	static final String REQUEST_CONTENT_LENGTH = "http.request_content_length";
+	static final String RESPONSE_CONTENT_LENGTH = "http.response_content_length";
+
+	/**
+	 * The completions of the requests of a connection whose body is still being read, more than one
+	 * when the connection multiplexes streams.
+	 */
+	private static final Attribute<Set<RequestCompletion>> UNREAD =
+			Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(TracingRequestHttpServerFilter.class.getName() + ".unread");
+
+	private final Map<HttpRequestPacket, Span> weakRequestMap;
+	private final Filter delegate;
+	private final TracingSettings settings;
+	protected Tracer tracer;
+
+	public TracingRequestHttpServerFilter(Filter delegate, Tracer tracer) {
+		this(delegate, null, tracer, new TracingSettings());
+	}
+
+	/**
+	 * @param delegate the filter whose requests are traced
+	 * @param tracer the tracer to create spans with
+	 * @param decorators applied to every span in the given order
+	 */
+	public TracingRequestHttpServerFilter(Filter delegate, Tracer tracer, List<GrizzlyServerSpanDecorator> decorators) {
+		this(delegate, null, tracer, new TracingSettings().decorators(decorators));
+	}
+
+	TracingRequestHttpServerFilter(Filter delegate, Tracer tracer, TracingSettings settings) {
+		this(delegate, null, tracer, settings);
+	}
+
+	/**
+	 * Spans are carried by the request packet itself, the given map is only kept up to date as a
+	 * fallback for code that still looks spans up through it.
+	 *
+	 * @deprecated use {@link #TracingRequestHttpServerFilter(Filter, Tracer)}, the shared map is a
+	 * contention point under load
+	 */
+	@Deprecated
+	public TracingRequestHttpServerFilter(Filter delegate, Map<HttpRequestPacket, Span> weakRequestMap, Tracer tracer) {
+		this(delegate, weakRequestMap, tracer, new TracingSettings());
+	}
+
+	private TracingRequestHttpServerFilter(Filter delegate, Map<HttpRequestPacket, Span> weakRequestMap, Tracer tracer,
+			TracingSettings settings) {
+		this.weakRequestMap = weakRequestMap;
+		this.delegate = delegate;
+		this.tracer = tracer;
+		this.settings = settings;
+	}
+
+	@Override
+  public NextAction handleRead(final FilterChainContext ctx) throws IOException {
+		if (ctx.getMessage() instanceof HttpContent) {
+			final HttpContent httpContent = ctx.getMessage();
+			final HttpRequestPacket request = (HttpRequestPacket) httpContent.getHttpHeader();
+			final long firstByteRead = settings.timings ? RequestTimings.claimPendingRead(ctx.getConnection()) : 0;
+			final RequestTrace existing = RequestTrace.get(request);
+			if (existing == null) {
+				// If we have not have already started a span for this request
+				final int connectionRequest = settings.connections != null
+						? settings.connections.onRequest(ctx.getConnection()) : 0;
+
+				if (settings.excludedPaths != null && settings.excludedPaths.matches(request.getRequestURIRef().getRequestURIBC())) {
+					RequestTrace.set(request, RequestTrace.UNTRACED);
+					return delegate.handleRead(ctx);
+				}
+
+				final TracingGovernor governor = settings.governor;
+				final TracingLevel level = governor != null ? governor.onRequestStart() : TracingLevel.FULL;
+				final long startNanos = settings.metrics != null || settings.tailCapture != null ? System.nanoTime() : 0;
+				final boolean sampled = level.compareTo(TracingLevel.MINIMAL) <= 0 && settings.sampler.isSampled(request);
+				if (!sampled && settings.metrics == null) {
+					RequestTrace.set(request, RequestTrace.UNTRACED);
+					if (governor != null) {
+						ctx.addCompletionListener(governor.untracedEnd);
+					}
+					return handleUntracedRead(ctx, request, level);
+				}
+
+				final Route route = settings.routes != null ? settings.routes.route(request) : Route.NONE;
+				if (!sampled) {
+					// measured all the same
+					final RequestTrace trace = new RequestTrace(null, null, startNanos);
+					onFirstContent(ctx, httpContent, new RequestCompletion(request, trace, route));
+					RequestTrace.set(request, trace);
+					try {
+						return handleUntracedRead(ctx, request, level);
+					} catch (IOException | RuntimeException e) {
+						trace.failed = true;
+						throw e;
+					}
+				}
+
+				final long tracingStart = governor != null ? System.nanoTime() : 0;
+				SpanContext extractedContext = extract(request);
+				Tracer.SpanBuilder spanBuilder = tracer.buildSpan(route.operationName(request.getMethod()))
+						.ignoreActiveSpan()
+						.asChildOf(extractedContext);
+				final GrizzlyServerSpanDecorator[] decorators;
+				if (level != TracingLevel.FULL) {
+					decorators = TracingGovernor.MINIMAL_TAGS;
+				} else if (settings.baseTags != null) {
+					spanBuilder = settings.baseTags.applyTo(spanBuilder, request.getMethod());
+					decorators = settings.baseTags.decorators;
+				} else {
+					decorators = settings.decorators;
+				}
+				final Span span = spanBuilder.start();
+
+				for (GrizzlyServerSpanDecorator decorator : decorators) {
+					decorator.onRequest(request, span);
+				}
+				if (settings.headerTags != null && level == TracingLevel.FULL) {
+					settings.headerTags.onRequest(request, span);
+				}
+				if (connectionRequest != 0) {
+					span.setTag(ConnectionTracing.REQUEST_INDEX, connectionRequest);
+				}
+
+				// headers are recycled by the time an outlier is known, so they are captured now
+				final TailCapture.Entry tailEntry = settings.tailCapture != null ? settings.tailCapture.claim() : null;
+				if (tailEntry != null) {
+					tailEntry.captureRequest(request);
+				}
+				final long[] timings = tailEntry != null ? tailEntry.timings
+						: settings.timings ? RequestTimings.create() : null;
+				if (timings != null) {
+					timings[RequestTimings.FIRST_BYTE_READ] = firstByteRead;
+				}
+
+				final RequestTrace trace = new RequestTrace(span, timings, startNanos);
+				trace.decorators = decorators;
+				trace.tailEntry = tailEntry;
+				if (settings.traceResponse) {
+					trace.traceResponse = TraceResponseHeaders.encode(tracer, span.context());
+				}
+				if (governor != null) {
+					trace.overheadNanos = System.nanoTime() - tracingStart;
+				}
+				onFirstContent(ctx, httpContent, new RequestCompletion(request, trace, route));
+				RequestTrace.set(request, trace);
+				if (weakRequestMap != null) {
+					weakRequestMap.put(request, span);
+				}
+
+				final NextAction delegateNextAction;
+				final ResumedScopeListener resumedScope = settings.activateScopes ? new ResumedScopeListener(tracer, span) : null;
+				if (resumedScope != null) {
+					// before the handler may suspend the context and resume it on another thread
+					resumedScope.register(ctx);
+				}
+				RequestTimings.stamp(timings, RequestTimings.HANDLER_START);
+				// the scope never outlives this thread's work, completion may happen elsewhere
+				final Scope scope = settings.activateScopes ? tracer.scopeManager().activate(span) : null;
+				try {
+					delegateNextAction = delegate.handleRead(ctx);
+				} catch (IOException | RuntimeException e) {
+					// the chain only reports failures to the filters preceding the failing one
+					trace.failed = true;
+					onError(trace, e);
+					throw e;
+				} finally {
+					if (scope != null) {
+						scope.close();
+					}
+					RequestTimings.stamp(timings, RequestTimings.HANDLER_END);
+					if (tailEntry != null) {
+						tailEntry.release();
+					}
+				}
+				if (resumedScope != null && !delegateNextAction.equals(ctx.getSuspendAction())) {
+					// not suspended, so the context is still this thread's and may go on to the next
+					// request of the connection, once suspended it is only touched by its completion
+					resumedScope.unregister(ctx);
+				}
+
+				return delegateNextAction;
+			} else if (httpContent.isLast() && existing.unread != null) {
+				onLastContent(ctx, existing);
+			}
+		}
+		return delegate.handleRead(ctx);
+	}
+
+	@Override
+  public NextAction handleWrite(FilterChainContext ctx) throws IOException {
+		return delegate.handleWrite(ctx);
+	}
+
+	@Override
+  public void onAdded(FilterChain filterChain) {
+		delegate.onAdded(filterChain);
+	}
+
+	@Override
+  public void onFilterChainChanged(FilterChain filterChain) {
+		delegate.onFilterChainChanged(filterChain);
+	}
+
+	@Override
+  public void onRemoved(FilterChain filterChain) {
+		delegate.onRemoved(filterChain);
+	}
+
+	@Override
+  public NextAction handleConnect(FilterChainContext ctx) throws IOException {
+		onConnectionOpened(ctx);
+		return delegate.handleConnect(ctx);
+	}
+
+	@Override
+  public NextAction handleAccept(FilterChainContext ctx) throws IOException {
+		onConnectionOpened(ctx);
+		return delegate.handleAccept(ctx);
+	}
+
+	@Override
+  public NextAction handleEvent(FilterChainContext ctx, FilterChainEvent event) throws IOException {
+		return delegate.handleEvent(ctx, event);
+	}
+
+	@Override
+  public NextAction handleClose(FilterChainContext ctx) throws IOException {
+		final Set<RequestCompletion> unread = ctx.getConnection() == null ? null : UNREAD.get(ctx.getConnection());
+		if (unread != null) {
+			for (RequestCompletion completion : unread) {
+				// the client went away halfway through sending the request
+				if (unread.remove(completion)) {
+					completion.trace.failed = true;
+					completion.onComplete(ctx);
+				}
+			}
+		}
+		if (settings.connections != null) {
+			settings.connections.onClose(ctx.getConnection());
+		}
+		return delegate.handleClose(ctx);
+	}
+
+	@Override
+  public void exceptionOccurred(FilterChainContext ctx, Throwable error) {
+		if (ctx.getMessage() instanceof HttpContent) {
+			final HttpContent httpContent = ctx.getMessage();
+			if (httpContent.getHttpHeader() instanceof HttpRequestPacket) {
+				final RequestTrace trace = RequestTrace.get((HttpRequestPacket) httpContent.getHttpHeader());
+				if (trace != null && trace != RequestTrace.UNTRACED) {
+					trace.failed = true;
+					if (trace.span != null) {
+						onError(trace, error);
+					}
+				}
+			}
+		}
+		delegate.exceptionOccurred(ctx, error);
+	}
+
+	/**
+	 * Connections are not traced while the governor steps tracing down.
+	 */
+	private void onConnectionOpened(FilterChainContext ctx) {
+		if (settings.connections != null
+				&& (settings.governor == null || settings.governor.getLevel() == TracingLevel.FULL)) {
+			settings.connections.onAccept(ctx.getConnection());
+		}
+	}
+
+	/**
+	 * The request ends with the processing of its last content, which for a request whose body
+	 * spans several reads is not the first one.
+	 */
+	private void onFirstContent(FilterChainContext ctx, HttpContent httpContent, RequestCompletion completion) {
+		if (settings.bodySizes) {
+			completion.trace.requestBytes = httpContent.getContent() == null ? 0 : httpContent.getContent().remaining();
+		}
+		if (httpContent.isLast() || ctx.getConnection() == null) {
+			ctx.addCompletionListener(completion);
+		} else {
+			completion.trace.unread = completion;
+			unread(ctx.getConnection()).add(completion);
+		}
+	}
+
+	private void onLastContent(FilterChainContext ctx, RequestTrace trace) {
+		final FilterChainContext.CompletionListener completion = trace.unread;
+		trace.unread = null;
+		// unless the connection was closed meanwhile
+		if (unread(ctx.getConnection()).remove(completion)) {
+			ctx.addCompletionListener(completion);
+		}
+	}
+
+	private static Set<RequestCompletion> unread(Connection<?> connection) {
+		Set<RequestCompletion> unread = UNREAD.get(connection);
+		if (unread == null) {
+			synchronized (connection) {
+				unread = UNREAD.get(connection);
+				if (unread == null) {
+					unread = Collections.newSetFromMap(new ConcurrentHashMap<RequestCompletion, Boolean>());
+					UNREAD.set(connection, unread);
+				}
+			}
+		}
+		return unread;
+	}
+
+	private final class RequestCompletion implements FilterChainContext.CompletionListener {
+		final HttpRequestPacket request;
+		final RequestTrace trace;
+		final Route route;
+		final Method method;
+
+		RequestCompletion(HttpRequestPacket request, RequestTrace trace, Route route) {
+			this.request = request;
+			this.trace = trace;
+			this.route = route;
+			this.method = request.getMethod();
+		}
+
+		@Override
+		public void onComplete(FilterChainContext context) {
+			final long tracingStart = settings.governor != null ? System.nanoTime() : 0;
+			if (settings.metrics != null) {
+				settings.metrics.record(route.template, method, trace.status, trace.failed, System.nanoTime() - trace.startNanos);
+			}
+			// everything else only makes it onto the slowest spans when capturing the tail
+			final boolean detailed = settings.tailCapture == null
+					|| settings.tailCapture.record(System.nanoTime() - trace.startNanos);
+			if (trace.span != null && detailed) {
+				if (trace.tailEntry != null) {
+					settings.tailCapture.promote(trace.span, trace.tailEntry);
+				} else if (trace.timings != null) {
+					RequestTimings.log(trace.span, trace.timings);
+				}
+				if (settings.bodySizes) {
+					trace.span.setTag(REQUEST_CONTENT_LENGTH, trace.requestBytes);
+					trace.span.setTag(RESPONSE_CONTENT_LENGTH, trace.responseBytes);
+				}
+			}
+			if (trace.span != null) {
+				if (settings.spanFinisher != null) {
+					settings.spanFinisher.finish(trace.span);
+				} else {
+					trace.span.finish();
+				}
+			}
+			RequestTrace.remove(request);
+			if (trace.tailEntry != null) {
+				trace.tailEntry.release();
+			}
+			if (weakRequestMap != null) {
+				weakRequestMap.remove(request);
+			}
+			if (settings.governor != null) {
+				settings.governor.onRequestEnd(trace.overheadNanos + System.nanoTime() - tracingStart);
+			}
+		}
+	}
+
+	private void onError(RequestTrace trace, Throwable error) {
+		for (GrizzlyServerSpanDecorator decorator : trace.decorators) {
+			decorator.onError(error, trace.span);
+		}
+	}
+
+	private SpanContext extract(HttpRequestPacket request) {
+		if (settings.extractor != null) {
+			return settings.extractor.extract(tracer, request);
+		}
+		return tracer.extract(Format.Builtin.HTTP_HEADERS, new GizzlyHttpRequestPacketAdapter(request));
+	}
+
+	/**
+	 * Requests left untraced are still handled with the incoming context active when only
+	 * propagating it.
+	 */
+	private NextAction handleUntracedRead(FilterChainContext ctx, HttpRequestPacket request, TracingLevel level)
+			throws IOException {
+		if (level != TracingLevel.PROPAGATION_ONLY) {
+			return delegate.handleRead(ctx);
+		}
+		final SpanContext extractedContext = extract(request);
+		if (extractedContext == null) {
+			return delegate.handleRead(ctx);
+		}
+		final Scope scope = tracer.scopeManager().activate(new PropagationSpan(extractedContext));
+		try {
+			return delegate.handleRead(ctx);
+		} finally {
+			scope.close();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.HttpResponsePacket;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+
+/**
+ * @author Jose Montoya
+ */
+public class TracingResponseHttpServerFilter extends BaseFilter {
+	private final Map<HttpRequestPacket, Span> weakRequestMap;
+	private final TracingSettings settings;
+	protected Tracer tracer;
+
+	public TracingResponseHttpServerFilter(Tracer tracer) {
+		this(null, tracer, new TracingSettings());
+	}
+
+	/**
+	 * @param tracer the tracer spans were created with
+	 * @param decorators applied to every response in the given order
+	 */
+	public TracingResponseHttpServerFilter(Tracer tracer, List<GrizzlyServerSpanDecorator> decorators) {
+		this(null, tracer, new TracingSettings().decorators(decorators));
+	}
+
+	TracingResponseHttpServerFilter(Tracer tracer, TracingSettings settings) {
+		this(null, tracer, settings);
+	}
+
+	/**
+	 * Spans are looked up on the request packet first, the given map is only consulted as a fallback.
+	 *
+	 * @deprecated use {@link #TracingResponseHttpServerFilter(Tracer)}, the shared map is a
+	 * contention point under load
+	 */
+	@Deprecated
+	public TracingResponseHttpServerFilter(Map<HttpRequestPacket, Span> weakRequestMap, Tracer tracer) {
+		this(weakRequestMap, tracer, new TracingSettings());
+	}
+
+	private TracingResponseHttpServerFilter(Map<HttpRequestPacket, Span> weakRequestMap, Tracer tracer,
+			TracingSettings settings) {
+		this.weakRequestMap = weakRequestMap;
+		this.tracer = tracer;
+		this.settings = settings;
+	}
+
+	/**
+	 * Counts the request content read after the header, this filter sees every read once while
+	 * the request filter may see one again when a suspended request resumes.
+	 */
+	@Override
+	public NextAction handleRead(FilterChainContext ctx) throws IOException {
+		if (settings.bodySizes && ctx.getMessage() instanceof HttpContent) {
+			final HttpContent httpContent = ctx.getMessage();
+			if (httpContent.getHttpHeader() instanceof HttpRequestPacket && httpContent.getContent() != null) {
+				final RequestTrace trace = RequestTrace.get((HttpRequestPacket) httpContent.getHttpHeader());
+				if (trace != null && trace != RequestTrace.UNTRACED) {
+					trace.requestBytes += httpContent.getContent().remaining();
+				}
+			}
+		}
+		return super.handleRead(ctx);
+	}
+
+	@Override
+	public NextAction handleWrite(FilterChainContext ctx) throws IOException {
+		if (ctx.getMessage() instanceof HttpContent) {
+			final HttpContent httpContent = ctx.getMessage();
+			final HttpResponsePacket response = (HttpResponsePacket) httpContent.getHttpHeader();
+			final HttpRequestPacket request = response.getRequest();
+			RequestTrace trace = RequestTrace.get(request);
+			if (trace == null && weakRequestMap != null) {
+				final Span span = weakRequestMap.get(request);
+				if (span != null) {
+					// keep track of the tagging with the request from now on
+					trace = new RequestTrace(span, null, 0);
+					trace.decorators = settings.decorators;
+					RequestTrace.set(request, trace);
+				}
+			}
+			if (trace != null && trace != RequestTrace.UNTRACED && !trace.responseTagged) {
+				// If we have not already set appropriate response tags
+				trace.status = response.getStatus();
+				if (trace.span != null) {
+					for (GrizzlyServerSpanDecorator decorator : trace.decorators) {
+						decorator.onResponse(response, trace.span);
+					}
+					if (trace.traceResponse != null && !response.isCommitted()) {
+						TraceResponseHeaders.add(response, trace.traceResponse);
+					}
+					if (trace.tailEntry != null) {
+						trace.tailEntry.captureResponse(response);
+					}
+				}
+				trace.responseTagged = true;
+			}
+			if (settings.bodySizes && trace != null && trace != RequestTrace.UNTRACED && httpContent.getContent() != null) {
+				trace.responseBytes += httpContent.getContent().remaining();
+			}
+			if (trace != null && trace.timings != null) {
+				RequestTimings.stamp(trace.timings, RequestTimings.FIRST_BYTE_WRITTEN);
+				if (httpContent.isLast()) {
+					RequestTimings.stamp(trace.timings, RequestTimings.LAST_BYTE_WRITTEN);
+				}
+			}
+		}
+		return super.handleWrite(ctx);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.List;
+
+/**
+ * Options shared by the request and response filters of a traced chain. {@link
+ * TracedFilterChainBuilder} fills one in and hands each chain it builds a copy of it, so the
+ * filters can treat it as immutable.
+ *
+ * @author Jose Montoya
+ */
+final class TracingSettings {
+	GrizzlyServerSpanDecorator[] decorators = {GrizzlyServerSpanDecorator.STANDARD_TAGS};
+	RequestSampler sampler = RequestSampler.ALWAYS;
+	PathMatcher excludedPaths;
+	AsyncSpanFinisher spanFinisher;
+	boolean timings;
+	RequestMetrics metrics;
+	Routes routes;
+	boolean bodySizes;
+	boolean traceResponse;
+	TracingGovernor governor;
+	BaseTags baseTags;
+	boolean activateScopes = true;
+	TailCapture tailCapture;
+	ConnectionTracing connections;
+	HeaderTags headerTags;
+	PropagationExtractor extractor;
+
+	TracingSettings decorators(List<GrizzlyServerSpanDecorator> decorators) {
+		this.decorators = decorators.toArray(new GrizzlyServerSpanDecorator[0]);
+		return this;
+	}
+
+	TracingSettings sampler(RequestSampler sampler) {
+		this.sampler = sampler;
+		return this;
+	}
+
+	TracingSettings excludedPaths(PathMatcher excludedPaths) {
+		this.excludedPaths = excludedPaths;
+		return this;
+	}
+
+	TracingSettings spanFinisher(AsyncSpanFinisher spanFinisher) {
+		this.spanFinisher = spanFinisher;
+		return this;
+	}
+
+	TracingSettings timings(boolean timings) {
+		this.timings = timings;
+		return this;
+	}
+
+	TracingSettings metrics(RequestMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	TracingSettings routes(Routes routes) {
+		this.routes = routes;
+		return this;
+	}
+
+	TracingSettings bodySizes(boolean bodySizes) {
+		this.bodySizes = bodySizes;
+		return this;
+	}
+
+	TracingSettings traceResponse(boolean traceResponse) {
+		this.traceResponse = traceResponse;
+		return this;
+	}
+
+	TracingSettings governor(TracingGovernor governor) {
+		this.governor = governor;
+		return this;
+	}
+
+	TracingSettings baseTags(BaseTags baseTags) {
+		this.baseTags = baseTags;
+		return this;
+	}
+
+	TracingSettings activateScopes(boolean activateScopes) {
+		this.activateScopes = activateScopes;
+		return this;
+	}
+
+	TracingSettings tailCapture(TailCapture tailCapture) {
+		this.tailCapture = tailCapture;
+		return this;
+	}
+
+	TracingSettings connections(ConnectionTracing connections) {
+		this.connections = connections;
+		return this;
+	}
+
+	TracingSettings headerTags(HeaderTags headerTags) {
+		this.headerTags = headerTags;
+		return this;
+	}
+
+	TracingSettings extractor(PropagationExtractor extractor) {
+		this.extractor = extractor;
+		return this;
+	}
+
+	TracingSettings copy() {
+		final TracingSettings copy = new TracingSettings();
+		copy.decorators = decorators.clone();
+		copy.sampler = sampler;
+		copy.excludedPaths = excludedPaths;
+		copy.spanFinisher = spanFinisher;
+		copy.timings = timings;
+		copy.metrics = metrics;
+		copy.routes = routes;
+		copy.bodySizes = bodySizes;
+		copy.traceResponse = traceResponse;
+		copy.governor = governor;
+		copy.baseTags = baseTags;
+		copy.activateScopes = activateScopes;
+		copy.tailCapture = tailCapture;
+		copy.connections = connections;
+		copy.headerTags = headerTags;
+		copy.extractor = extractor;
+		return copy;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.CountDownLatch;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class AsyncSpanFinisherTest {
+	private final MockTracer tracer = new MockTracer();
+
+	@Test
+	public void testFinishesWithStampedTimestamp() {
+		AsyncSpanFinisher finisher = new AsyncSpanFinisher(4, AsyncSpanFinisher.DropPolicy.DROP, false);
+		MockSpan span = (MockSpan) tracer.buildSpan("span").start();
+
+		long before = System.currentTimeMillis() * 1000;
+		finisher.finish(span);
+		long after = System.currentTimeMillis() * 1000;
+		assertEquals(1, finisher.getQueueDepth());
+		assertEquals(0, tracer.finishedSpans().size());
+
+		assertEquals(1, finisher.drain());
+		assertEquals(0, finisher.getQueueDepth());
+		assertEquals(1, tracer.finishedSpans().size());
+		assertTrue(span.finishMicros() >= before && span.finishMicros() <= after);
+	}
+
+	@Test
+	public void testDropsWhenFull() {
+		AsyncSpanFinisher finisher = new AsyncSpanFinisher(3, AsyncSpanFinisher.DropPolicy.DROP, false);
+		for (int i = 0; i < 6; i++) {
+			finisher.finish(tracer.buildSpan("span").start());
+		}
+
+		// capacity is rounded up to 4
+		assertEquals(4, finisher.getQueueDepth());
+		assertEquals(2, finisher.getDroppedCount());
+		assertEquals(4, finisher.drain());
+		assertEquals(4, tracer.finishedSpans().size());
+
+		// slots are reused once drained
+		finisher.finish(tracer.buildSpan("span").start());
+		assertEquals(1, finisher.drain());
+		assertEquals(2, finisher.getDroppedCount());
+	}
+
+	@Test
+	public void testFinishesInlineWhenFull() {
+		AsyncSpanFinisher finisher = new AsyncSpanFinisher(2, AsyncSpanFinisher.DropPolicy.FINISH_INLINE, false);
+		finisher.finish(tracer.buildSpan("queued").start());
+		finisher.finish(tracer.buildSpan("queued").start());
+		finisher.finish(tracer.buildSpan("inline").start());
+
+		assertEquals(1, tracer.finishedSpans().size());
+		assertEquals("inline", tracer.finishedSpans().get(0).operationName());
+		assertEquals(1, finisher.getFinishedInlineCount());
+		assertEquals(0, finisher.getDroppedCount());
+
+		finisher.close();
+		assertEquals(3, tracer.finishedSpans().size());
+	}
+
+	@Test
+	public void testNoSpanLostWhileClosing() throws Exception {
+		final AsyncSpanFinisher finisher = new AsyncSpanFinisher(1024, AsyncSpanFinisher.DropPolicy.FINISH_INLINE);
+		final CountDownLatch started = new CountDownLatch(4);
+		Thread[] producers = new Thread[4];
+		for (int i = 0; i < producers.length; i++) {
+			producers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					for (int j = 0; j < 10000; j++) {
+						finisher.finish(tracer.buildSpan("span").start());
+					}
+				}
+			});
+			producers[i].start();
+		}
+
+		started.await();
+		finisher.close();
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertEquals(40000, tracer.finishedSpans().size());
+	}
+}
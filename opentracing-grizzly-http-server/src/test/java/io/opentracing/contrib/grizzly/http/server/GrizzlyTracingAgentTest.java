@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChain;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.filterchain.TransportFilter;
+import org.glassfish.grizzly.http.HttpClientFilter;
+import org.glassfish.grizzly.http.HttpServerFilter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.GlobalTracer;
+import net.bytebuddy.agent.ByteBuddyAgent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class GrizzlyTracingAgentTest {
+
+	@BeforeClass
+	public static void installAgent() {
+		GlobalTracer.registerIfAbsent(new MockTracer());
+		// the builder is already loaded, so this also covers attaching late
+		FilterChainBuilder.stateless();
+		GrizzlyTracingAgent.install(ByteBuddyAgent.install());
+	}
+
+	@Test
+	public void testServerChainTraced() {
+		FilterChain chain = FilterChainBuilder.stateless()
+				.add(new TransportFilter())
+				.add(new HttpServerFilter())
+				.add(new BaseFilter())
+				.build();
+
+		assertEquals(4, chain.size());
+		assertTrue(chain.get(2) instanceof TracingResponseHttpServerFilter);
+		assertTrue(chain.get(3) instanceof TracingRequestHttpServerFilter);
+	}
+
+	@Test
+	public void testOtherChainsUntouched() {
+		FilterChain chain = FilterChainBuilder.stateless()
+				.add(new TransportFilter())
+				.add(new HttpClientFilter())
+				.add(new BaseFilter())
+				.build();
+
+		assertEquals(3, chain.size());
+	}
+
+	@Test
+	public void testTracedChainNotTracedTwice() {
+		FilterChain chain = new TracedFilterChainBuilder(new MockTracer())
+				.add(new TransportFilter())
+				.add(new HttpServerFilter())
+				.add(new BaseFilter())
+				.build();
+
+		assertEquals(4, chain.size());
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.Arrays;
+
+import org.glassfish.grizzly.http.util.DataChunk;
+import org.glassfish.grizzly.memory.Buffers;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class PathMatcherTest {
+	private final PathMatcher matcher = PathMatcher.compile(Arrays.asList(
+			"/health", "/metrics", "/static/**", "/assets/*.css", "/api/*/ping", "/**/favicon.ico"));
+
+	@Test
+	public void testExact() {
+		assertTrue(matches("/health"));
+		assertTrue(matches("/metrics"));
+		assertFalse(matches("/health/deep"));
+		assertFalse(matches("/healthz"));
+		assertFalse(matches("/"));
+	}
+
+	@Test
+	public void testPrefix() {
+		assertTrue(matches("/static"));
+		assertTrue(matches("/static/"));
+		assertTrue(matches("/static/js/app.js"));
+		assertFalse(matches("/statics/app.js"));
+	}
+
+	@Test
+	public void testGlobs() {
+		assertTrue(matches("/assets/site.css"));
+		assertFalse(matches("/assets/theme/site.css"));
+		assertFalse(matches("/assets/site.js"));
+		assertTrue(matches("/api/v1/ping"));
+		assertFalse(matches("/api/v1/v2/ping"));
+		assertTrue(matches("/favicon.ico"));
+		assertTrue(matches("/a/b/favicon.ico"));
+		assertFalse(matches("/users/42"));
+	}
+
+	@Test
+	public void testMatchesBufferBackedChunks() {
+		DataChunk chunk = DataChunk.newInstance();
+		byte[] bytes = "GET /static/app.js HTTP/1.1".getBytes();
+		chunk.setBuffer(Buffers.wrap(null, bytes), 4, 18);
+		assertTrue(matcher.matches(chunk));
+	}
+
+	private boolean matches(String path) {
+		DataChunk chunk = DataChunk.newInstance();
+		chunk.setBytes(path.getBytes());
+		return matcher.matches(chunk);
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+import org.junit.Test;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class PropagationExtractorTest {
+	private final PropagationExtractor extractor = PropagationExtractor.standard();
+
+	@Test
+	public void testOnlyPresentFormatHandedToTracer() {
+		RecordingPropagator propagator = new RecordingPropagator("traceparent");
+		HttpRequestPacket request = request(
+				"Cookie", "session=1",
+				"b3", "80f198ee56343ba864fe8b2a57d3eff7-e457b5a2e4d86bd1-1",
+				"TraceParent", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01",
+				"tracestate", "congo=t61rcWkgMzE",
+				"X-Filler", "not a propagation header");
+
+		assertNotNull(extractor.extract(new MockTracer(propagator), request));
+		assertEquals(Collections.singletonList(Arrays.asList("TraceParent", "tracestate")), propagator.extracted);
+	}
+
+	@Test
+	public void testFallsBackToNextPresentFormat() {
+		RecordingPropagator propagator = new RecordingPropagator("uber-trace-id");
+		HttpRequestPacket request = request(
+				"X-B3-TraceId", "80f198ee56343ba8",
+				"uberctx-tenant", "acme",
+				"Uber-Trace-Id", "80f198ee56343ba8:e457b5a2e4d86bd1:0:1",
+				"X-B3-SpanId", "e457b5a2e4d86bd1");
+
+		assertNotNull(extractor.extract(new MockTracer(propagator), request));
+		assertEquals(Arrays.asList(
+				Arrays.asList("X-B3-TraceId", "X-B3-SpanId"),
+				Arrays.asList("uberctx-tenant", "Uber-Trace-Id")), propagator.extracted);
+	}
+
+	@Test
+	public void testSkipsRequestsWithoutPropagationHeaders() {
+		RecordingPropagator propagator = new RecordingPropagator("traceparent");
+		HttpRequestPacket request = request(
+				"Host", "localhost",
+				"uberctx-", "a prefix alone is not a header of the format",
+				"b3-not", "a longer name is not a header of the format");
+
+		assertNull(extractor.extract(new MockTracer(propagator), request));
+		assertTrue(propagator.extracted.isEmpty());
+	}
+
+	@Test
+	public void testCustomFormat() {
+		HttpRequestPacket request = request("traceid", "123", "spanid", "456", "X-Filler", "not propagated");
+
+		MockSpan.MockContext context = (MockSpan.MockContext) new PropagationExtractor()
+				.format(Format.Builtin.HTTP_HEADERS, "traceid", "spanid")
+				.extract(new MockTracer(MockTracer.Propagator.TEXT_MAP), request);
+		assertEquals(123, context.traceId());
+		assertEquals(456, context.spanId());
+	}
+
+	private static HttpRequestPacket request(String... headers) {
+		HttpRequestPacket.Builder builder = HttpRequestPacket.builder().method(Method.GET).protocol(Protocol.HTTP_1_1).uri("/");
+		for (int i = 0; i < headers.length; i += 2) {
+			builder.header(headers[i], headers[i + 1]);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Records the header names of every extraction, and extracts a context from those including
+	 * the given header.
+	 */
+	private static final class RecordingPropagator implements MockTracer.Propagator {
+		private final String accepted;
+		final List<List<String>> extracted = new ArrayList<>();
+
+		RecordingPropagator(String accepted) {
+			this.accepted = accepted;
+		}
+
+		@Override
+		public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+		}
+
+		@Override
+		public <C> MockSpan.MockContext extract(Format<C> format, C carrier) {
+			final List<String> names = new ArrayList<>();
+			boolean found = false;
+			for (Map.Entry<String, String> header : (TextMap) carrier) {
+				names.add(header.getKey());
+				found |= header.getKey().equalsIgnoreCase(accepted);
+			}
+			extracted.add(names);
+			return found ? new MockSpan.MockContext(1, 2, Collections.<String, String>emptyMap()) : null;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.grizzly.http.Method;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class RequestMetricsTest {
+
+	@Test
+	public void testSeriesPerMethodAndStatusClass() {
+		RequestMetrics metrics = new RequestMetrics();
+		metrics.record(null, Method.GET, 200, false, TimeUnit.MICROSECONDS.toNanos(300));
+		metrics.record(null, Method.GET, 204, false, TimeUnit.MILLISECONDS.toNanos(3));
+		metrics.record(null, Method.GET, 503, false, TimeUnit.SECONDS.toNanos(30));
+		metrics.record(null, Method.POST, 201, true, TimeUnit.MILLISECONDS.toNanos(1));
+		metrics.record(null, Method.valueOf("PROPFIND"), 0, true, 1);
+		metrics.record("/users/{id}", Method.GET, 200, false, 1);
+
+		List<RequestMetrics.SeriesSnapshot> snapshot = metrics.snapshot();
+		assertEquals(5, snapshot.size());
+		assertEquals(1, find(snapshot, "/users/{id}", "GET", "2xx").getCount());
+
+		RequestMetrics.SeriesSnapshot getOk = find(snapshot, "GET", "2xx");
+		assertEquals(2, getOk.getCount());
+		assertEquals(0, getOk.getErrorCount());
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(3300), getOk.getDurationSumNanos());
+		long[] expected = new long[getOk.getBucketBoundsNanos().length + 1];
+		expected[0] = 1;
+		expected[3] = 1;
+		assertArrayEquals(expected, getOk.getBucketCounts());
+
+		RequestMetrics.SeriesSnapshot getUnavailable = find(snapshot, "GET", "5xx");
+		assertEquals(1, getUnavailable.getErrorCount());
+		assertEquals(1, getUnavailable.getBucketCounts()[getUnavailable.getBucketCounts().length - 1]);
+
+		// a request that threw is an error whatever its status
+		assertEquals(1, find(snapshot, "POST", "2xx").getErrorCount());
+		assertEquals(1, find(snapshot, "OTHER", "other").getCount());
+	}
+
+	private static RequestMetrics.SeriesSnapshot find(List<RequestMetrics.SeriesSnapshot> snapshot, String method,
+			String statusClass) {
+		return find(snapshot, null, method, statusClass);
+	}
+
+	private static RequestMetrics.SeriesSnapshot find(List<RequestMetrics.SeriesSnapshot> snapshot, String route,
+			String method, String statusClass) {
+		for (RequestMetrics.SeriesSnapshot series : snapshot) {
+			if ((route == null ? series.getRoute() == null : route.equals(series.getRoute()))
+					&& series.getMethod().equals(method) && series.getStatusClass().equals(statusClass)) {
+				return series;
+			}
+		}
+		assertTrue("no series for " + method + " " + statusClass, false);
+		return null;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class RequestSamplerTest {
+
+	@Test
+	public void testRateLimitingAllowsOneSecondOfBurst() {
+		RateLimitingRequestSampler sampler = new RateLimitingRequestSampler(10);
+		long now = System.nanoTime();
+
+		for (int i = 0; i < 10; i++) {
+			assertTrue(sampler.tryAcquire(now));
+		}
+		assertFalse(sampler.tryAcquire(now));
+
+		// one token comes back every 100ms
+		assertTrue(sampler.tryAcquire(now + 100000000L));
+		assertFalse(sampler.tryAcquire(now + 100000000L));
+	}
+
+	@Test
+	public void testRateLimitingBelowOnePerSecond() {
+		RateLimitingRequestSampler sampler = new RateLimitingRequestSampler(0.5);
+		long now = System.nanoTime();
+
+		assertTrue(sampler.tryAcquire(now));
+		assertFalse(sampler.tryAcquire(now));
+		assertFalse(sampler.tryAcquire(now + 1000000000L));
+
+		// one token every two seconds
+		assertTrue(sampler.tryAcquire(now + 2000000000L));
+		assertFalse(sampler.tryAcquire(now + 2000000000L));
+	}
+
+	@Test
+	public void testParentDecision() {
+		RequestSampler sampler = new ParentSampledRequestSampler(RequestSampler.NEVER);
+
+		assertFalse(sampler.isSampled(request()));
+		assertTrue(sampler.isSampled(request("traceparent", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01")));
+		assertFalse(sampler.isSampled(request("traceparent", "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-00")));
+		assertTrue(sampler.isSampled(request("b3", "80f198ee56343ba864fe8b2a57d3eff7-e457b5a2e4d86bd1-1-05e3ac9a4f6e3b90")));
+		assertFalse(sampler.isSampled(request("b3", "0")));
+		assertTrue(sampler.isSampled(request("X-B3-Sampled", "true")));
+		assertTrue(sampler.isSampled(request("X-B3-Flags", "1")));
+		assertTrue(sampler.isSampled(request("uber-trace-id", "3d1a9b5e7c%3A3d1a9b5e7c%3A0%3A1")));
+		assertFalse(sampler.isSampled(request("uber-trace-id", "3d1a9b5e7c:3d1a9b5e7c:0:0")));
+	}
+
+	@Test
+	public void testLongestRouteWins() {
+		RequestSampler sampler = RouteRequestSampler.builder()
+				.route("/api", RequestSampler.NEVER)
+				.route("/api/checkout", RequestSampler.ALWAYS)
+				.otherwise(RequestSampler.NEVER)
+				.build();
+
+		assertTrue(sampler.isSampled(request("/api/checkout/42")));
+		assertFalse(sampler.isSampled(request("/api/catalog")));
+		assertFalse(sampler.isSampled(request("/")));
+	}
+
+	private static HttpRequestPacket request(String uri) {
+		return HttpRequestPacket.builder().method(Method.GET).protocol(Protocol.HTTP_1_1).uri(uri).build();
+	}
+
+	private static HttpRequestPacket request(String header, String value) {
+		return HttpRequestPacket.builder().method(Method.GET).protocol(Protocol.HTTP_1_1).uri("/")
+				.header(header, value).build();
+	}
+
+	private static HttpRequestPacket request() {
+		return request("/");
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Jose Montoya
+ */
+public class RouteResolverTest {
+
+	@Test
+	public void testTemplates() {
+		RouteResolver resolver = new TemplateRouteResolver("/", "/users/{id}", "/users/me", "/users/{id}/orders/{orderId}");
+
+		assertEquals("/", resolver.resolve(request("/")));
+		assertEquals("/users/{id}", resolver.resolve(request("/users/42")));
+		// literal segments win over placeholders
+		assertEquals("/users/me", resolver.resolve(request("/users/me")));
+		assertEquals("/users/{id}/orders/{orderId}", resolver.resolve(request("/users/42/orders/7")));
+		assertNull(resolver.resolve(request("/users")));
+		assertNull(resolver.resolve(request("/users/")));
+		assertNull(resolver.resolve(request("/users/42/orders")));
+	}
+
+	@Test
+	public void testCachedByPath() {
+		final AtomicInteger resolved = new AtomicInteger();
+		Routes routes = new Routes(new RouteResolver() {
+			@Override
+			public String resolve(HttpRequestPacket request) {
+				resolved.incrementAndGet();
+				return new TemplateRouteResolver("/users/{id}").resolve(request);
+			}
+		}, 10, 16);
+
+		Route route = routes.route(request("/users/42"));
+		assertEquals("/users/{id}", route.template);
+		assertEquals("HTTP::GET /users/{id}", route.operationName(Method.GET));
+		assertSame(route, routes.route(request("/users/42")));
+		assertEquals(1, resolved.get());
+
+		// another path of the same route shares its operation names
+		assertSame(route, routes.route(request("/users/43")));
+		assertSame(Route.UNKNOWN, routes.route(request("/other")));
+		assertEquals("HTTP::POST", Route.UNKNOWN.operationName(Method.POST));
+	}
+
+	@Test
+	public void testNonStandardMethodsShareOneName() {
+		Route route = new Route("/users/{id}");
+
+		assertEquals("HTTP::OTHER /users/{id}", route.operationName(Method.valueOf("PROPFIND")));
+		assertSame(route.operationName(Method.valueOf("PROPFIND")), route.operationName(Method.valueOf("MKCOL")));
+		assertEquals("HTTP::OTHER", Route.UNKNOWN.operationName(Method.valueOf("PROPFIND")));
+		// without a resolver, spans keep the names they always had
+		assertEquals("HTTP::PROPFIND", Route.NONE.operationName(Method.valueOf("PROPFIND")));
+		assertEquals("HTTP::GET", Route.NONE.operationName(Method.GET));
+	}
+
+	@Test
+	public void testCardinalityCapped() {
+		Routes routes = new Routes(new RouteResolver() {
+			@Override
+			public String resolve(HttpRequestPacket request) {
+				// a resolver that leaks raw paths into templates
+				return request.getRequestURI();
+			}
+		}, 2, 16);
+
+		assertEquals("/a", routes.route(request("/a")).template);
+		assertEquals("/b", routes.route(request("/b")).template);
+		assertEquals(Routes.OVERFLOW, routes.route(request("/c")).template);
+		assertEquals(Routes.OVERFLOW, routes.route(request("/d")).template);
+		assertEquals("/a", routes.route(request("/a")).template);
+	}
+
+	private static HttpRequestPacket request(String uri) {
+		return HttpRequestPacket.builder()
+				.method(Method.GET)
+				.protocol(Protocol.HTTP_1_1)
+				.uri(uri)
+				.build();
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+import com.ning.http.client.AsyncHttpClient;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.http.HttpContent;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.Protocol;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class TailCaptureTest extends AbstractHttpTest {
+	private final MockTracer tracer = new MockTracer();
+
+	@Test
+	public void testBucketsCoverEveryDuration() {
+		int previous = -1;
+		for (long nanos = 0; nanos < 1 << 20; nanos++) {
+			int bucket = TailCapture.bucket(nanos);
+			assertTrue(bucket == previous || bucket == previous + 1);
+			assertTrue(nanos <= TailCapture.upperBound(bucket));
+			previous = bucket;
+		}
+		assertEquals(Long.MAX_VALUE, TailCapture.upperBound(TailCapture.bucket(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testThresholdFollowsPercentile() {
+		TailCapture tailCapture = new TailCapture(0.99, 1000);
+		for (int i = 1; i <= 1000; i++) {
+			// nothing is an outlier before the first window is complete
+			assertFalse(tailCapture.record(i * 1000L) && i < 1000);
+		}
+
+		// 990 us, within a bucket
+		assertTrue(tailCapture.getThresholdNanos() >= 990000);
+		assertTrue(tailCapture.getThresholdNanos() < 990000 * 5 / 4);
+		assertTrue(tailCapture.record(2000000));
+		assertFalse(tailCapture.record(500000));
+	}
+
+	@Test
+	public void testEntriesReusedOnceReleased() {
+		TailCapture tailCapture = new TailCapture(0.5, 2, 4);
+		TailCapture.Entry first = tailCapture.claim();
+		first.timings[RequestTimings.HANDLER_START] = 1;
+		first.captureRequest(request());
+		TailCapture.Entry second = tailCapture.claim();
+		assertNotSame(first, second);
+		// past the pool, requests get entries of their own
+		TailCapture.Entry third = tailCapture.claim();
+		assertNotSame(first, third);
+		assertNotSame(second, third);
+
+		// handed back once both the completion and the handler are done with it
+		first.release();
+		assertNotSame(first, tailCapture.claim());
+		first.release();
+		assertSame(first, tailCapture.claim());
+		assertEquals(0, first.timings[RequestTimings.HANDLER_START]);
+		assertEquals(0, first.headerCount);
+	}
+
+	@Test
+	public void testTimingsOwnedByTheirRequest() throws Exception {
+		TracingSettings settings = new TracingSettings()
+				.tailCapture(new TailCapture(0.5, 4))
+				.timings(true);
+		TracingRequestHttpServerFilter filter = new TracingRequestHttpServerFilter(new BaseFilter() {
+			@Override
+			public NextAction handleRead(FilterChainContext ctx) throws IOException {
+				return ctx.getStopAction();
+			}
+		}, tracer, settings);
+
+		// a slow request still in flight while many others come and go
+		HttpRequestPacket slow = request();
+		FilterChainContext slowCtx = context(slow);
+		filter.handleRead(slowCtx);
+		long[] slowTimings = RequestTrace.get(slow).timings;
+		long[] recorded = slowTimings.clone();
+		for (int i = 0; i < 64; i++) {
+			HttpRequestPacket request = request();
+			FilterChainContext ctx = context(request);
+			filter.handleRead(ctx);
+			assertTrue(RequestTrace.get(request).timings != slowTimings);
+			ctx.completeAndRelease();
+		}
+		assertArrayEquals(recorded, slowTimings);
+		slowCtx.completeAndRelease();
+	}
+
+	@Test
+	public void testOnlyOutliersPromoted() throws Exception {
+		TracingSettings settings = new TracingSettings()
+				.tailCapture(new TailCapture(0.5, 4))
+				.timings(true)
+				.bodySizes(true);
+		TracingRequestHttpServerFilter filter = new TracingRequestHttpServerFilter(new BaseFilter() {
+			@Override
+			public NextAction handleRead(FilterChainContext ctx) throws IOException {
+				return ctx.getStopAction();
+			}
+		}, tracer, settings);
+
+		for (int i = 0; i < 4; i++) {
+			exchange(filter, 0);
+		}
+		exchange(filter, 50);
+
+		List<MockSpan> spans = tracer.finishedSpans();
+		assertEquals(5, spans.size());
+		// the fourth completes the first window, the ones before it are never outliers
+		for (MockSpan span : spans.subList(0, 3)) {
+			assertFalse(span.tags().containsKey(TailCapture.THRESHOLD_TAG));
+			assertFalse(span.tags().containsKey(TracingRequestHttpServerFilter.REQUEST_CONTENT_LENGTH));
+			assertTrue(span.logEntries().isEmpty());
+		}
+		MockSpan slow = spans.get(4);
+		assertTrue(slow.tags().containsKey(TailCapture.THRESHOLD_TAG));
+		assertEquals("localhost", slow.tags().get("http.request.header.host"));
+		assertFalse(slow.tags().containsKey("http.request.header.authorization"));
+		assertEquals(HeaderTags.DEFAULT_MAX_VALUE_LENGTH, ((String) slow.tags().get("http.request.header.x-long")).length());
+		assertEquals(0L, slow.tags().get(TracingRequestHttpServerFilter.REQUEST_CONTENT_LENGTH));
+		assertFalse(slow.logEntries().isEmpty());
+	}
+
+	@Test
+	public void testHeadersOfRecycledPacketsPromoted() throws Exception {
+		HttpServer server = HttpServer.createSimpleServer(null, LOCALHOST, PORT);
+		server.getServerConfiguration().addHttpHandler(new HttpHandler() {
+			@Override
+			public void service(Request request, org.glassfish.grizzly.http.server.Response response) throws Exception {
+				if ("/slow".equals(request.getRequestURI())) {
+					Thread.sleep(50);
+				}
+				response.setHeader("X-Served-By", "handler");
+				response.getWriter().write("ok");
+			}
+		}, "/");
+		server.start();
+		try {
+			NetworkListener listener = server.getListener("grizzly");
+			listener.getTransport().setProcessor(
+					new TracedFilterChainBuilder(FilterChainBuilder.stateless().addAll(listener.getFilterChain()), tracer)
+							.withTailCapture(0.5)
+							.build());
+
+			try (AsyncHttpClient client = new AsyncHttpClient()) {
+				// a full window to set the threshold, and the few requests a stripe may lag behind
+				for (int i = 0; i < 1100; i++) {
+					client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+				}
+				client.prepareGet(new URL("http", LOCALHOST, PORT, "/slow").toString())
+						.addHeader("X-Tenant-Id", "acme")
+						.addHeader("Cookie", "session=secret")
+						.execute().get();
+			}
+		} finally {
+			server.shutdownNow();
+		}
+
+		List<MockSpan> spans = tracer.finishedSpans();
+		MockSpan slow = spans.get(spans.size() - 1);
+		assertTrue(slow.tags().containsKey(TailCapture.THRESHOLD_TAG));
+		assertEquals("acme", slow.tags().get("http.request.header.x-tenant-id"));
+		assertFalse(slow.tags().containsKey("http.request.header.cookie"));
+		assertEquals("handler", slow.tags().get("http.response.header.x-served-by"));
+	}
+
+	private void exchange(TracingRequestHttpServerFilter filter, long millis) throws Exception {
+		FilterChainContext ctx = context(request());
+		filter.handleRead(ctx);
+		Thread.sleep(millis);
+		ctx.completeAndRelease();
+	}
+
+	private static HttpRequestPacket request() {
+		return HttpRequestPacket.builder()
+				.method(Method.GET)
+				.uri("/")
+				.protocol(Protocol.HTTP_1_1)
+				.header("Host", "localhost")
+				.header("Authorization", "Bearer secret")
+				.header("X-Long", new String(new char[1000]).replace('\0', 'x'))
+				.build();
+	}
+
+	private static FilterChainContext context(HttpRequestPacket request) {
+		FilterChainContext ctx = new FilterChainContext();
+		ctx.setMessage(HttpContent.builder(request).last(true).build());
+		return ctx;
+	}
+}
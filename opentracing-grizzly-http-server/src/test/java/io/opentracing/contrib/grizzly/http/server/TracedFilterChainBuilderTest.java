@@ -0,0 +1,1173 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.Response;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.contrib.concurrent.TracedExecutorService;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import org.glassfish.grizzly.ProcessorExecutor;
+import org.glassfish.grizzly.filterchain.*;
+import org.glassfish.grizzly.http.*;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Jose Montoya
+ */
+public class TracedFilterChainBuilderTest extends AbstractHttpTest {
+	private TCPNIOTransport transport;
+	protected static final MockTracer tracer = new MockTracer(new ThreadLocalScopeManager());
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		GlobalTracer.registerIfAbsent(tracer);
+	}
+
+	@Before
+	public void before() throws Exception{
+		// clear traces
+		tracer.reset();
+	}
+	@After
+	public void after() throws Exception {
+		// stop the transport
+		transport.shutdownNow();
+	}
+
+	@Test
+	public void testSyncResponse() throws Exception {
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+
+		MockSpan mockSpan = spans.get(0);
+		assertEquals("HTTP::GET", mockSpan.operationName());
+		assertEquals(5, mockSpan.tags().size());
+		assertEquals(Tags.SPAN_KIND_SERVER, mockSpan.tags().get(Tags.SPAN_KIND.getKey()));
+		assertEquals("GET", mockSpan.tags().get(Tags.HTTP_METHOD.getKey()));
+		assertEquals("http://localhost:18906/", mockSpan.tags().get(Tags.HTTP_URL.getKey()));
+		assertEquals(200, mockSpan.tags().get(Tags.HTTP_STATUS.getKey()));
+		assertEquals("java-grizzly-http-server", mockSpan.tags().get(Tags.COMPONENT.getKey()));
+	}
+
+	@Test
+	public void testExtractsParentContext() throws Exception {
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString())
+					.addHeader("X-Filler", "not a propagation header")
+					.addHeader("traceid", "123")
+					.addHeader("spanid", "456")
+					.execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+		assertEquals(123, spans.get(0).context().traceId());
+		assertEquals(456, spans.get(0).parentId());
+	}
+
+	@Test
+	public void testHeaderTags() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer).withHeaderTags(8, "X-Tenant-Id", "user-agent", "x-request-id"),
+				new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString())
+					.addHeader("x-tenant-id", "acme")
+					.addHeader("User-Agent", "a very long user agent")
+					.addHeader("X-Filler", "not allowlisted")
+					.execute().get();
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+		Map<String, Object> tags = spans.get(0).tags();
+		assertEquals("acme", tags.get(HeaderTags.TAG_PREFIX + "x-tenant-id"));
+		assertEquals("a very l", tags.get(HeaderTags.TAG_PREFIX + "user-agent"));
+		assertFalse(tags.containsKey(HeaderTags.TAG_PREFIX + "x-request-id"));
+		assertFalse(tags.containsKey(HeaderTags.TAG_PREFIX + "x-filler"));
+	}
+
+	@Test
+	public void testCustomDecoratorsAppliedInOrder() throws Exception {
+		final GrizzlyServerSpanDecorator tenantTags = new GrizzlyServerSpanDecorator() {
+			@Override
+			public void onRequest(HttpRequestPacket request, Span span) {
+				span.setTag("tenant.id", request.getHeader("X-Tenant-Id"));
+				// overrides the standard component tag, as it runs after it
+				span.setTag(Tags.COMPONENT.getKey(), "tenant-aware");
+			}
+
+			@Override
+			public void onResponse(HttpResponsePacket response, Span span) {
+				span.setTag("tenant.responded", true);
+			}
+
+			@Override
+			public void onError(Throwable thrown, Span span) {
+			}
+		};
+
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withDecorators(GrizzlyServerSpanDecorator.STANDARD_TAGS, tenantTags), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString())
+					.addHeader("X-Tenant-Id", "acme")
+					.execute().get();
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+
+		MockSpan mockSpan = spans.get(0);
+		assertEquals(7, mockSpan.tags().size());
+		assertEquals("acme", mockSpan.tags().get("tenant.id"));
+		assertEquals(true, mockSpan.tags().get("tenant.responded"));
+		assertEquals("tenant-aware", mockSpan.tags().get(Tags.COMPONENT.getKey()));
+		assertEquals(200, mockSpan.tags().get(Tags.HTTP_STATUS.getKey()));
+	}
+
+	@Test
+	public void testBaseTagsSetBeforeStart() throws Exception {
+		final AtomicReference<Map<String, Object>> tagsAtStart = new AtomicReference<>();
+		final GrizzlyServerSpanDecorator firstDecorator = new GrizzlyServerSpanDecorator() {
+			@Override
+			public void onRequest(HttpRequestPacket request, Span span) {
+				tagsAtStart.set(new HashMap<>(((MockSpan) span).tags()));
+			}
+
+			@Override
+			public void onResponse(HttpResponsePacket response, Span span) {
+			}
+
+			@Override
+			public void onError(Throwable thrown, Span span) {
+			}
+		};
+
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withDecorators(firstDecorator, GrizzlyServerSpanDecorator.STANDARD_TAGS), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals("java-grizzly-http-server", tagsAtStart.get().get(Tags.COMPONENT.getKey()));
+		assertEquals("GET", tagsAtStart.get().get(Tags.HTTP_METHOD.getKey()));
+		assertEquals(Tags.SPAN_KIND_SERVER, tagsAtStart.get().get(Tags.SPAN_KIND.getKey()));
+		assertNull(tagsAtStart.get().get(Tags.HTTP_URL.getKey()));
+		assertEquals("http://localhost:" + PORT + "/", spans.get(0).tags().get(Tags.HTTP_URL.getKey()));
+	}
+
+	@Test
+	public void testErrorTagged() throws Exception {
+		final IllegalStateException thrown = new IllegalStateException("boom");
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				throw thrown;
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		} catch (ExecutionException expected) {
+			// the server closes the connection
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+
+		MockSpan mockSpan = spans.get(0);
+		assertEquals(true, mockSpan.tags().get(Tags.ERROR.getKey()));
+		assertEquals(1, mockSpan.logEntries().size());
+		assertEquals(Tags.ERROR.getKey(), mockSpan.logEntries().get(0).fields().get("event"));
+		assertEquals(thrown, mockSpan.logEntries().get(0).fields().get("error.object"));
+	}
+
+	@Test
+	public void testUnsampledRequestNotTraced() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withSampler(new ParentSampledRequestSampler(RequestSampler.NEVER)), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			Response unsampled = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+			assertEquals(200, unsampled.getStatusCode());
+
+			Response sampledUpstream = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString())
+					.addHeader("X-B3-Sampled", "1")
+					.execute().get();
+			assertEquals(200, sampledUpstream.getStatusCode());
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+		assertEquals(200, spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+	}
+
+	@Test
+	public void testTraceResponseHeaders() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withTraceResponseHeaders()
+				.withSampler(new ParentSampledRequestSampler(RequestSampler.NEVER)), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		Response sampled;
+		Response unsampled;
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			sampled = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString())
+					.addHeader("X-B3-Sampled", "1")
+					.execute().get();
+			unsampled = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		MockSpan span = awaitFinishedSpans(1).get(0);
+		// ids are taken as the tracer encodes them, padded to the trace context widths
+		String traceparent = String.format("00-%32s-%16s-01", span.context().toTraceId(), span.context().toSpanId())
+				.replace(' ', '0');
+		assertEquals(traceparent, sampled.getHeader("traceresponse"));
+		assertEquals("traceparent;desc=\"" + traceparent + "\"", sampled.getHeader("Server-Timing"));
+		assertNull(unsampled.getHeader("traceresponse"));
+		assertNull(unsampled.getHeader("Server-Timing"));
+	}
+
+	@Test
+	public void testTraceResponseHeadersLeftOutWhenTracerDrops() throws Exception {
+		// a tracer whose propagation says it dropped every trace
+		MockTracer droppingTracer = new MockTracer(new ThreadLocalScopeManager(), new MockTracer.Propagator() {
+			@Override
+			public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+				((TextMap) carrier).put("traceparent",
+						String.format("00-%032x-%016x-00", ctx.traceId(), ctx.spanId()));
+			}
+
+			@Override
+			public <C> MockSpan.MockContext extract(Format<C> format, C carrier) {
+				return null;
+			}
+		});
+		setupServer(new TracedFilterChainBuilder(droppingTracer).withTraceResponseHeaders(),
+				new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+		assertNull(response.getHeader("traceresponse"));
+		assertNull(response.getHeader("Server-Timing"));
+	}
+
+	@Test
+	public void testAsyncSpanFinisher() throws Exception {
+		AsyncSpanFinisher finisher = new AsyncSpanFinisher(64, AsyncSpanFinisher.DropPolicy.DROP);
+		setupServer(new TracedFilterChainBuilder(tracer).withAsyncSpanFinisher(finisher), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			Response response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+			assertEquals(200, response.getStatusCode());
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		finisher.close();
+		assertEquals(1, spans.size());
+		assertEquals(200, spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+		assertEquals(0, finisher.getDroppedCount());
+	}
+
+	@Test
+	public void testTimingsLogged() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer).withTimings(), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			Response response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+			assertEquals(200, response.getStatusCode());
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+
+		List<MockSpan.LogEntry> logs = spans.get(0).logEntries();
+		assertEquals(5, logs.size());
+		assertEquals("http.request.first_byte", logs.get(0).fields().get("event"));
+		assertEquals("handler.start", logs.get(1).fields().get("event"));
+		assertEquals("handler.end", logs.get(2).fields().get("event"));
+		assertEquals("http.response.first_byte", logs.get(3).fields().get("event"));
+		assertEquals("http.response.last_byte", logs.get(4).fields().get("event"));
+		assertTrue(logs.get(0).timestampMicros() <= logs.get(1).timestampMicros());
+		assertTrue(logs.get(1).timestampMicros() <= logs.get(3).timestampMicros());
+		assertTrue(logs.get(3).timestampMicros() <= logs.get(2).timestampMicros());
+		// on the span's own clock, give or take the millisecond the wall clock is read with
+		assertTrue(logs.get(1).timestampMicros() >= spans.get(0).startMicros() - 1000);
+		assertTrue(logs.get(4).timestampMicros() <= spans.get(0).finishMicros() + 1000);
+	}
+
+	@Test
+	public void testMetricsRecordUnsampledRequests() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withSampler(RequestSampler.NEVER)
+				.withMetrics(metrics), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			for (int i = 0; i < 3; i++) {
+				Response response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+				assertEquals(200, response.getStatusCode());
+			}
+		}
+
+		List<RequestMetrics.SeriesSnapshot> snapshot = metrics.snapshot();
+		for (int i = 0; i < 50 && (snapshot.isEmpty() || snapshot.get(0).getCount() < 3); i++) {
+			Thread.sleep(100);
+			snapshot = metrics.snapshot();
+		}
+		assertEquals(1, snapshot.size());
+		assertEquals("GET", snapshot.get(0).getMethod());
+		assertEquals("2xx", snapshot.get(0).getStatusClass());
+		assertEquals(3, snapshot.get(0).getCount());
+		assertEquals(0, snapshot.get(0).getErrorCount());
+		assertEquals(0, tracer.finishedSpans().size());
+	}
+
+	@Test
+	public void testOperationNamedAfterRoute() throws Exception {
+		RequestMetrics metrics = new RequestMetrics();
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withRouteResolver(new TemplateRouteResolver("/users/{id}"))
+				.withMetrics(metrics), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/users/42").toString()).execute().get();
+			client.prepareGet(new URL("http", LOCALHOST, PORT, "/unknown").toString()).execute().get();
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+		// the requests went over separate connections, their spans may finish in any order
+		Map<Object, String> operationNames = new HashMap<>();
+		for (MockSpan span : spans) {
+			operationNames.put(span.tags().get(Tags.HTTP_URL.getKey()), span.operationName());
+		}
+		assertEquals("HTTP::GET /users/{id}", operationNames.get("http://localhost:18906/users/42"));
+		assertEquals("HTTP::GET", operationNames.get("http://localhost:18906/unknown"));
+
+		assertEquals(2, metrics.snapshot().size());
+	}
+
+	@Test
+	public void testExcludedPathNotTraced() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer).excluding("/health", "/static/**"), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			assertEquals(200, client.prepareGet(new URL("http", LOCALHOST, PORT, "/health").toString()).execute().get().getStatusCode());
+			assertEquals(200, client.prepareGet(new URL("http", LOCALHOST, PORT, "/static/app.js").toString()).execute().get().getStatusCode());
+			assertEquals(200, client.prepareGet(new URL("http", LOCALHOST, PORT, "/orders").toString()).execute().get().getStatusCode());
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+		assertEquals("http://localhost:18906/orders", spans.get(0).tags().get(Tags.HTTP_URL.getKey()));
+	}
+
+	@Test
+	public void testSyncResponseWithChild() throws Exception {
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				Span span = tracer.buildSpan("child").start();
+				Scope scope = tracer.scopeManager().activate(span);
+
+				writeEmptyResponse(ctx);
+
+				span.finish();
+				scope.close();
+
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+
+		assertEquals(spans.get(0).context().traceId(), spans.get(1).context().traceId());
+		assertEquals(spans.get(0).operationName(), "child");
+		assertEquals(spans.get(0).parentId(), spans.get(1).context().spanId());
+	}
+
+	@Test
+	public void testAsyncResponseWithChild() throws Exception {
+		final ExecutorService executorService = new TracedExecutorService(Executors.newFixedThreadPool(2), tracer);
+
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				executorService.submit(new Runnable() {
+					@Override
+					public void run() {
+						Span span = tracer.buildSpan("async-child").start();
+						Scope scope = tracer.scopeManager().activate(span);
+
+						try {
+							System.out.println("runnable " + Thread.currentThread().getName());
+							Thread.sleep(200);
+							writeEmptyResponse(ctx);
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
+
+						span.finish();
+						scope.close();
+
+						ctx.resume(ctx.getStopAction());
+					}
+				});
+
+				return ctx.getSuspendAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+
+		assertEquals(spans.get(0).context().traceId(), spans.get(1).context().traceId());
+		assertEquals(spans.get(0).operationName(), "async-child");
+		assertEquals(spans.get(0).parentId(), spans.get(1).context().spanId());
+	}
+
+	/**
+	 * The client may observe the response before the server's completion listener has finished the
+	 * span, so give the server a moment to catch up.
+	 */
+	private List<MockSpan> awaitFinishedSpans(int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (tracer.finishedSpans().size() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		return tracer.finishedSpans();
+	}
+
+	@Test
+	public void testLongPollingResumedWithActiveSpan() throws Exception {
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		final AtomicInteger handled = new AtomicInteger();
+		final AtomicReference<Span> activeOnResume = new AtomicReference<>();
+		final AtomicReference<Span> activeAfterResume = new AtomicReference<>();
+
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(final FilterChainContext ctx) {
+				if (handled.getAndIncrement() == 0) {
+					// park the request until an event comes in, then handle it again
+					scheduler.schedule(new Runnable() {
+						@Override
+						public void run() {
+							ctx.resume();
+							activeAfterResume.set(tracer.activeSpan());
+						}
+					}, 200, TimeUnit.MILLISECONDS);
+					return ctx.getSuspendAction();
+				}
+
+				activeOnResume.set(tracer.activeSpan());
+				tracer.buildSpan("event").start().finish();
+				writeEmptyResponse(ctx);
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		} finally {
+			scheduler.shutdown();
+		}
+		scheduler.awaitTermination(5, TimeUnit.SECONDS);
+
+		assertEquals(200, response.getStatusCode());
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+		assertEquals("event", spans.get(0).operationName());
+		assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+		assertEquals(200, spans.get(1).tags().get(Tags.HTTP_STATUS.getKey()));
+		assertSame(spans.get(1), activeOnResume.get());
+		assertNull(activeAfterResume.get());
+	}
+
+	@Test
+	public void testResumedBeforeHandlerReturns() throws Exception {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		final Map<HttpRequestPacket, CountDownLatch> suspended = new ConcurrentHashMap<>();
+		final List<Span> activeOnResume = new CopyOnWriteArrayList<>();
+
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(final FilterChainContext ctx) {
+				HttpRequestPacket request = (HttpRequestPacket) ((HttpContent) ctx.getMessage()).getHttpHeader();
+				CountDownLatch resumed = suspended.get(request);
+				if (resumed != null) {
+					activeOnResume.add(tracer.activeSpan());
+					resumed.countDown();
+					writeEmptyResponse(ctx);
+					return ctx.getStopAction();
+				}
+
+				resumed = new CountDownLatch(1);
+				suspended.put(request, resumed);
+				ctx.suspend();
+				executorService.execute(new Runnable() {
+					@Override
+					public void run() {
+						ctx.resume();
+					}
+				});
+				try {
+					// the resumed handling runs before this one returns
+					assertTrue(resumed.await(5, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				return ctx.getSuspendAction();
+			}
+		});
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			// the second request may reuse the processing context of the first
+			for (int i = 0; i < 2; i++) {
+				assertEquals(200, client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get()
+						.getStatusCode());
+			}
+		} finally {
+			executorService.shutdown();
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+		assertEquals(2, activeOnResume.size());
+		for (int i = 0; i < 2; i++) {
+			assertSame(spans.get(i), activeOnResume.get(i));
+		}
+	}
+
+	@Test
+	public void testAsyncWriteWithActivatedSpan() throws Exception {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+		setupServer(new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(final FilterChainContext ctx) {
+				executorService.submit(new Runnable() {
+					@Override
+					public void run() {
+						HttpRequestPacket request = (HttpRequestPacket) ((HttpContent) ctx.getMessage()).getHttpHeader();
+						HttpResponsePacket responsePacket = HttpResponsePacket.builder(request)
+								.status(200)
+								.reasonPhrase("OK")
+								.chunked(true)
+								.build();
+
+						try (Scope scope = TracedRequests.activate(ctx, tracer)) {
+							tracer.buildSpan("write").start().finish();
+							ctx.write(HttpContent.builder(responsePacket)
+									.content(Buffers.wrap(ctx.getMemoryManager(), "first"))
+									.build());
+							ctx.write(HttpContent.builder(responsePacket)
+									.content(Buffers.wrap(ctx.getMemoryManager(), "second"))
+									.last(true)
+									.build());
+						}
+
+						ctx.resume(ctx.getStopAction());
+					}
+				});
+
+				return ctx.getSuspendAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		} finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(200, response.getStatusCode());
+		assertEquals("firstsecond", response.getResponseBody());
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+		assertEquals("write", spans.get(0).operationName());
+		assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+		assertEquals(5, spans.get(1).tags().size());
+		assertEquals(200, spans.get(1).tags().get(Tags.HTTP_STATUS.getKey()));
+	}
+
+	@Test
+	public void testRequestContextOnly() throws Exception {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		final TracedRequestExecutor executor = new TracedRequestExecutor(executorService, tracer);
+		final AtomicReference<Span> activeInHandler = new AtomicReference<>();
+
+		setupServer(new TracedFilterChainBuilder(tracer).withRequestContextOnly(), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(final FilterChainContext ctx) {
+				activeInHandler.set(tracer.activeSpan());
+				executor.execute(ctx, new Runnable() {
+					@Override
+					public void run() {
+						tracer.buildSpan("write").start().finish();
+						writeEmptyResponse(ctx);
+						ctx.resume(ctx.getStopAction());
+					}
+				});
+
+				return ctx.getSuspendAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		} finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(200, response.getStatusCode());
+		assertNull(activeInHandler.get());
+
+		List<MockSpan> spans = awaitFinishedSpans(2);
+		assertEquals(2, spans.size());
+		assertEquals("write", spans.get(0).operationName());
+		assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+	}
+
+	@Test
+	public void testPipelinedRequestsTaggedOncePerResponse() throws Exception {
+		final AtomicInteger responsesTagged = new AtomicInteger();
+		final GrizzlyServerSpanDecorator countingTags = new GrizzlyServerSpanDecorator() {
+			@Override
+			public void onRequest(HttpRequestPacket request, Span span) {
+			}
+
+			@Override
+			public void onResponse(HttpResponsePacket response, Span span) {
+				responsesTagged.incrementAndGet();
+			}
+
+			@Override
+			public void onError(Throwable thrown, Span span) {
+			}
+		};
+
+		setupServer(new TracedFilterChainBuilder(tracer)
+				.withDecorators(GrizzlyServerSpanDecorator.STANDARD_TAGS, countingTags), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				HttpRequestPacket request = (HttpRequestPacket) ((HttpContent) ctx.getMessage()).getHttpHeader();
+				HttpResponsePacket responsePacket = HttpResponsePacket.builder(request)
+						.status(request.getRequestURI().equals("/missing") ? 404 : 200)
+						.chunked(true)
+						.build();
+
+				// several content chunks per response
+				ctx.write(HttpContent.builder(responsePacket)
+						.content(Buffers.wrap(ctx.getMemoryManager(), "chunk"))
+						.build());
+				ctx.write(HttpContent.builder(responsePacket)
+						.content(Buffers.wrap(ctx.getMemoryManager(), "chunk"))
+						.build());
+				ctx.write(HttpContent.builder(responsePacket)
+						.last(true)
+						.build());
+
+				return ctx.getStopAction();
+			}
+		});
+
+		try (Socket socket = new Socket(LOCALHOST, PORT)) {
+			OutputStream out = socket.getOutputStream();
+			out.write(("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+					+ "GET /missing HTTP/1.1\r\nHost: localhost\r\n\r\n"
+					+ "GET /last HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			socket.setSoTimeout(5000);
+			InputStream in = socket.getInputStream();
+			StringBuilder received = new StringBuilder();
+			int lastChunks = 0;
+			while (lastChunks < 3) {
+				received.append(read(in));
+				if (received.length() >= 7 && received.lastIndexOf("\r\n0\r\n\r\n") == received.length() - 7) {
+					lastChunks++;
+				}
+			}
+			assertTrue(received.indexOf("404 Not Found") > received.indexOf("200 OK"));
+			assertTrue(received.lastIndexOf("200 OK") > received.indexOf("404 Not Found"));
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(3);
+		assertEquals(3, spans.size());
+		assertEquals(3, responsesTagged.get());
+		for (MockSpan span : spans) {
+			String url = (String) span.tags().get(Tags.HTTP_URL.getKey());
+			assertEquals(url.endsWith("/missing") ? 404 : 200, span.tags().get(Tags.HTTP_STATUS.getKey()));
+		}
+	}
+
+	@Test
+	public void testBodySizesCountedAcrossReads() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer).withBodySizes(), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				HttpContent httpContent = ctx.getMessage();
+				if (!httpContent.isLast()) {
+					return ctx.getStopAction();
+				}
+
+				HttpResponsePacket responsePacket = HttpResponsePacket.builder((HttpRequestPacket) httpContent.getHttpHeader())
+						.status(200)
+						.chunked(true)
+						.build();
+				ctx.write(HttpContent.builder(responsePacket)
+						.content(Buffers.wrap(ctx.getMemoryManager(), "hello "))
+						.build());
+				ctx.write(HttpContent.builder(responsePacket)
+						.content(Buffers.wrap(ctx.getMemoryManager(), "world"))
+						.last(true)
+						.build());
+				return ctx.getStopAction();
+			}
+		});
+
+		try (Socket socket = new Socket(LOCALHOST, PORT)) {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			String[] parts = {
+					"POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n",
+					"4\r\nabcd\r\n",
+					"6\r\nefghij\r\n",
+					"0\r\n\r\n"};
+			for (String part : parts) {
+				// one read per part
+				out.write(part.getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+				Thread.sleep(50);
+			}
+
+			socket.setSoTimeout(5000);
+			InputStream in = socket.getInputStream();
+			StringBuilder received = new StringBuilder();
+			while (received.indexOf("\r\n0\r\n\r\n") < 0) {
+				received.append(read(in));
+			}
+		}
+
+		List<MockSpan> spans = awaitFinishedSpans(1);
+		assertEquals(1, spans.size());
+		assertEquals(10L, spans.get(0).tags().get(TracingRequestHttpServerFilter.REQUEST_CONTENT_LENGTH));
+		assertEquals(11L, spans.get(0).tags().get(TracingRequestHttpServerFilter.RESPONSE_CONTENT_LENGTH));
+	}
+
+	@Test
+	public void testConnectionSpans() throws Exception {
+		setupServer(new TracedFilterChainBuilder(tracer).withConnectionSpans(1), new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				writeEmptyResponse(ctx);
+				return ctx.getStopAction();
+			}
+		});
+
+		try (Socket socket = new Socket(LOCALHOST, PORT)) {
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+			socket.setSoTimeout(5000);
+			for (int i = 0; i < 2; i++) {
+				// one request at a time over the same connection
+				out.write("GET /reused HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+				StringBuilder received = new StringBuilder();
+				while (received.indexOf("\r\n\r\n") < 0) {
+					received.append(read(in));
+				}
+			}
+		}
+
+		// the close may be handled before the last request's completion
+		List<MockSpan> spans = new ArrayList<>(awaitFinishedSpans(3));
+		assertEquals(3, spans.size());
+		MockSpan connection = null;
+		for (MockSpan span : spans) {
+			if (ConnectionTracing.OPERATION_NAME.equals(span.operationName())) {
+				connection = span;
+			}
+		}
+		assertNotNull(connection);
+		spans.remove(connection);
+		assertEquals(2, connection.tags().get(ConnectionTracing.REQUESTS));
+		assertEquals("remote", connection.tags().get(ConnectionTracing.CLOSE_TYPE));
+		assertTrue((Long) connection.tags().get(ConnectionTracing.FIRST_REQUEST_LATENCY) > 0);
+		assertTrue((Long) connection.tags().get(ConnectionTracing.LIFETIME)
+				>= (Long) connection.tags().get(ConnectionTracing.FIRST_REQUEST_LATENCY));
+		// the first request may complete after the second
+		Set<Object> requestIndexes = new HashSet<>();
+		for (MockSpan span : spans) {
+			requestIndexes.add(span.tags().get(ConnectionTracing.REQUEST_INDEX));
+		}
+		assertEquals(new HashSet<Object>(Arrays.asList(1, 2)), requestIndexes);
+		// not part of any request's trace
+		assertEquals(0, connection.parentId());
+		assertTrue(spans.get(0).context().traceId() != connection.context().traceId());
+	}
+
+	private void setupServer(Function<FilterChainContext, NextAction> nextActionSupplier) throws Exception {
+		// Create a FilterChain using TracedFilterChainBuilder
+		setupServer(new TracedFilterChainBuilder(tracer), nextActionSupplier);
+	}
+
+	@Test
+	public void testMultiplexedStreamsTracedSeparately() throws Exception {
+		final StreamsFilter streamsFilter = new StreamsFilter(3);
+		setupServer(new TracedFilterChainBuilder(tracer).withBodySizes(), streamsFilter, new Function<FilterChainContext, NextAction>() {
+			@Override
+			public NextAction apply(FilterChainContext ctx) {
+				HttpContent httpContent = ctx.getMessage();
+				if (!httpContent.isLast()) {
+					return ctx.getStopAction();
+				}
+
+				HttpRequestPacket request = (HttpRequestPacket) httpContent.getHttpHeader();
+				int stream = Integer.parseInt(request.getRequestURI().substring("/stream/".length()));
+				ctx.write(HttpContent.builder(HttpResponsePacket.builder(request).status(200 + stream).build())
+						.last(true)
+						.build());
+				return ctx.getStopAction();
+			}
+		});
+
+		Response response;
+
+		try (AsyncHttpClient client = new AsyncHttpClient()) {
+			response = client.prepareGet(new URL("http", LOCALHOST, PORT, "/").toString()).execute().get();
+		}
+
+		assertEquals(200, response.getStatusCode());
+		assertEquals(3, streamsFilter.responses.get());
+
+		List<MockSpan> spans = awaitFinishedSpans(3);
+		assertEquals(3, spans.size());
+		for (MockSpan span : spans) {
+			String url = (String) span.tags().get(Tags.HTTP_URL.getKey());
+			int stream = Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+			assertEquals(200 + stream, span.tags().get(Tags.HTTP_STATUS.getKey()));
+			assertEquals(3L, span.tags().get(TracingRequestHttpServerFilter.REQUEST_CONTENT_LENGTH));
+		}
+	}
+
+	/**
+	 * Stands in for a multiplexing protocol, every request is turned into several streams sharing
+	 * its connection, whose bodies arrive interleaved.
+	 */
+	private static class StreamsFilter extends HttpBaseFilter {
+		final AtomicInteger responses = new AtomicInteger();
+		final int streams;
+
+		StreamsFilter(int streams) {
+			this.streams = streams;
+		}
+
+		@Override
+		public NextAction handleRead(FilterChainContext ctx) throws IOException {
+			HttpContent httpContent = ctx.getMessage();
+			if (!httpContent.isLast()) {
+				return ctx.getStopAction();
+			}
+
+			HttpRequestPacket[] requests = new HttpRequestPacket[streams];
+			for (int i = 0; i < streams; i++) {
+				requests[i] = HttpRequestPacket.builder()
+						.method(Method.POST)
+						.uri("/stream/" + i)
+						.protocol(Protocol.HTTP_2_0)
+						.header("host", LOCALHOST + ":" + PORT)
+						.build();
+				upstream(ctx, HttpContent.builder(requests[i])
+						.content(Buffers.wrap(ctx.getMemoryManager(), "ab"))
+						.build());
+			}
+			for (HttpRequestPacket request : requests) {
+				upstream(ctx, HttpContent.builder(request)
+						.content(Buffers.wrap(ctx.getMemoryManager(), "c"))
+						.last(true)
+						.build());
+			}
+
+			ctx.write(HttpContent.builder(HttpResponsePacket.builder((HttpRequestPacket) httpContent.getHttpHeader())
+					.status(200)
+					.build())
+					.last(true)
+					.build());
+			return ctx.getStopAction();
+		}
+
+		@Override
+		public NextAction handleWrite(FilterChainContext ctx) throws IOException {
+			// the responses of the streams
+			responses.incrementAndGet();
+			return ctx.getStopAction();
+		}
+
+		private void upstream(FilterChainContext ctx, HttpContent httpContent) {
+			FilterChainContext streamCtx = ctx.copy();
+			streamCtx.setStartIdx(ctx.getFilterIdx() + 1);
+			streamCtx.setFilterIdx(ctx.getFilterIdx() + 1);
+			streamCtx.setMessage(httpContent);
+			ProcessorExecutor.execute(streamCtx.getInternalContext());
+		}
+	}
+
+	private void setupServer(FilterChainBuilder filterChainBuilder, Function<FilterChainContext, NextAction> nextActionSupplier) throws Exception {
+		setupServer(filterChainBuilder, null, nextActionSupplier);
+	}
+
+	private void setupServer(FilterChainBuilder filterChainBuilder, Filter streamFilter,
+			Function<FilterChainContext, NextAction> nextActionSupplier) throws Exception {
+
+		// Add TransportFilter, which is responsible
+		// for reading and writing data to the connection
+		filterChainBuilder.add(new TransportFilter());
+		filterChainBuilder.add(new HttpServerFilter());
+		if (streamFilter != null) {
+			filterChainBuilder.add(streamFilter);
+		}
+		filterChainBuilder.add(new BaseFilter() {
+			@Override
+			public NextAction handleRead(FilterChainContext ctx) throws IOException {
+				if (ctx.getMessage() instanceof HttpContent) {
+					return nextActionSupplier.apply(ctx);
+				}
+
+				return ctx.getStopAction();
+			}
+		});
+
+		// Create TCP transport
+		transport = TCPNIOTransportBuilder.newInstance().build();
+		transport.setProcessor(filterChainBuilder.build());
+
+		// binding transport to start listen on certain host and port
+		transport.bind(LOCALHOST, PORT);
+
+		// start the transport
+		transport.start();
+	}
+
+	/**
+	 * Fails instead of spinning on the end of the stream when the server closes the connection
+	 * early.
+	 */
+	private static char read(InputStream in) throws IOException {
+		int read = in.read();
+		assertTrue("connection closed before the expected response", read != -1);
+		return (char) read;
+	}
+
+	private void writeEmptyResponse(FilterChainContext ctx) {
+		HttpContent httpContent = ctx.getMessage();
+		HttpRequestPacket request = (HttpRequestPacket) httpContent.getHttpHeader();
+		HttpResponsePacket responsePacket = HttpResponsePacket.builder(request)
+				.status(200)
+				.reasonPhrase("OK")
+				.build();
+
+		ctx.write(HttpContent.builder(responsePacket)
+				.content(null)
+				.last(true)
+				.build());
+	}
+}
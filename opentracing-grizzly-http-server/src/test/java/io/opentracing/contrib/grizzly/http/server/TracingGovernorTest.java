@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.grizzly.http.server;
+
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+
+import io.opentracing.contrib.grizzly.http.server.TracingGovernor.TracingLevel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Jose Montoya
+ */
+public class TracingGovernorTest {
+	private static final long INTERVAL = 100;
+
+	private long now;
+	private final TracingGovernor governor = new TracingGovernor(100, 1000, INTERVAL, new LongSupplier() {
+		@Override
+		public long getAsLong() {
+			return now;
+		}
+	});
+
+	@Test
+	public void testStepsDownWhileSaturated() {
+		assertEquals(TracingLevel.FULL, governor.getLevel());
+
+		// requests piling up
+		startRequests(150);
+		assertEquals(TracingLevel.FULL, governor.getLevel());
+
+		assertEquals(TracingLevel.MINIMAL, nextInterval());
+		assertEquals(TracingLevel.PROPAGATION_ONLY, nextInterval());
+		assertEquals(TracingLevel.OFF, nextInterval());
+		assertEquals(TracingLevel.OFF, nextInterval());
+	}
+
+	@Test
+	public void testStepsDownOnOverhead() {
+		for (int i = 0; i < 10; i++) {
+			startRequests(10);
+			endRequests(10, 5000);
+			nextInterval();
+		}
+
+		assertEquals(TracingLevel.OFF, governor.getLevel());
+		assertEquals(0, governor.getInFlight());
+	}
+
+	@Test
+	public void testStepsBackUpWithHysteresis() {
+		startRequests(150);
+		nextInterval();
+		nextInterval();
+		assertEquals(TracingLevel.PROPAGATION_ONLY, governor.getLevel());
+
+		// under the budget but above half of it, nothing changes
+		endRequests(70, 0);
+		for (int i = 0; i < 3 * TracingGovernor.RECOVERY_EVALUATIONS; i++) {
+			assertEquals(TracingLevel.PROPAGATION_ONLY, nextInterval());
+		}
+
+		// well under the budget, each level back up takes several intervals
+		endRequests(60, 0);
+		for (int i = 1; i < TracingGovernor.RECOVERY_EVALUATIONS; i++) {
+			assertEquals(TracingLevel.PROPAGATION_ONLY, nextInterval());
+		}
+		assertEquals(TracingLevel.MINIMAL, nextInterval());
+
+		// a rise into the band between half the budget and the budget resets the recovery
+		for (int i = 1; i < TracingGovernor.RECOVERY_EVALUATIONS; i++) {
+			assertEquals(TracingLevel.MINIMAL, nextInterval());
+		}
+		startRequests(40);
+		assertEquals(TracingLevel.MINIMAL, nextInterval());
+		endRequests(40, 0);
+		for (int i = 1; i < TracingGovernor.RECOVERY_EVALUATIONS; i++) {
+			assertEquals(TracingLevel.MINIMAL, nextInterval());
+		}
+		assertEquals(TracingLevel.FULL, nextInterval());
+	}
+
+	@Test
+	public void testEvaluatedOncePerInterval() {
+		startRequests(150);
+		now += INTERVAL;
+		// every request of the interval sees the level the first one evaluated
+		startRequests(1000);
+		assertEquals(TracingLevel.MINIMAL, governor.getLevel());
+	}
+
+	private TracingLevel nextInterval() {
+		now += INTERVAL;
+		governor.onRequestStart();
+		governor.onRequestEnd(0);
+		return governor.getLevel();
+	}
+
+	private void startRequests(int count) {
+		for (int i = 0; i < count; i++) {
+			governor.onRequestStart();
+		}
+	}
+
+	private void endRequests(int count, long overheadNanos) {
+		for (int i = 0; i < count; i++) {
+			governor.onRequestEnd(overheadNanos);
+		}
+	}
+}